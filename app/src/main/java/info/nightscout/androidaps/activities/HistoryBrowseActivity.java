@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
@@ -188,7 +189,7 @@ public class HistoryBrowseActivity extends NoSplashAppCompatActivity {
                 }, FabricPrivacy::logException)
         );
         disposable.add(RxBus.INSTANCE
-                .toObservable(EventIobCalculationProgress.class)
+                .toObservable(EventIobCalculationProgress.class, 250, TimeUnit.MILLISECONDS)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(event -> {
                     if (iobCalculationProgressView != null)
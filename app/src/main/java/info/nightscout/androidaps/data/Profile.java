@@ -46,6 +46,13 @@ public class Profile {
     private JSONArray targetHigh;
     private LongSparseArray<Double> targetHigh_v; // oldest at index 0
 
+    // compiled from *_v arrays on first lookup, read without locking
+    private volatile Schedule isfSchedule;
+    private volatile Schedule icSchedule;
+    private volatile Schedule basalSchedule;
+    private volatile Schedule targetLowSchedule;
+    private volatile Schedule targetHighSchedule;
+
     private int percentage;
     private int timeshift;
 
@@ -95,6 +102,11 @@ public class Profile {
         basal_v = null;
         targetLow_v = null;
         targetHigh_v = null;
+        isfSchedule = null;
+        icSchedule = null;
+        basalSchedule = null;
+        targetLowSchedule = null;
+        targetHighSchedule = null;
 
         isValid = true;
         isValidated = false;
@@ -245,21 +257,28 @@ public class Profile {
             // Check for minimal basal value
             if (pump != null) {
                 PumpDescription description = pump.getPumpDescription();
+                boolean replaced = false;
                 for (int i = 0; i < basal_v.size(); i++) {
                     if (basal_v.valueAt(i) < description.basalMinimumRate) {
                         basal_v.setValueAt(i, description.basalMinimumRate);
+                        replaced = true;
                         if (notify)
                             sendBelowMinimumNotification(from);
                     } else if (basal_v.valueAt(i) > description.basalMaximumRate) {
                         basal_v.setValueAt(i, description.basalMaximumRate);
+                        replaced = true;
                         if (notify)
                             sendAboveMaximumNotification(from);
                     }
                 }
+                // schedule compiled before validation contains replaced values
+                if (replaced)
+                    basalSchedule = null;
             } else {
                 // if pump not available (at start)
                 // do not store converted array
                 basal_v = null;
+                basalSchedule = null;
                 isValidated = false;
             }
 
@@ -348,19 +367,40 @@ public class Profile {
         return multiplier;
     }
 
-    private double getValueToTime(LongSparseArray<Double> array, Integer timeAsSeconds) {
-        Double lastValue = null;
-
-        for (Integer index = 0; index < array.size(); index++) {
-            long tas = array.keyAt(index);
-            double value = array.valueAt(index);
-            if (lastValue == null) lastValue = value;
-            if (timeAsSeconds < tas) {
-                break;
+    /**
+     * Segment start times and values of one schedule with percentage and timeshift already applied.
+     * Lookup starts at segment valid at beginning of 30 min slot so it's constant time for any profile.
+     */
+    private static final class Schedule {
+        private static final int SLOT = 30 * 60;
+        private static final int SLOTS = 24 * 60 * 60 / SLOT;
+
+        private final int[] start;
+        private final double[] value;
+        private final int[] slotIndex = new int[SLOTS];
+
+        Schedule(LongSparseArray<Double> array) {
+            start = new int[array.size()];
+            value = new double[array.size()];
+            for (int index = 0; index < array.size(); index++) {
+                start[index] = (int) array.keyAt(index);
+                value[index] = array.valueAt(index);
+            }
+            int index = 0;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                while (index + 1 < start.length && start[index + 1] <= slot * SLOT)
+                    index++;
+                slotIndex[slot] = index;
             }
-            lastValue = value;
         }
-        return lastValue;
+
+        double get(int timeAsSeconds) {
+            int slot = Math.max(0, Math.min(SLOTS - 1, timeAsSeconds / SLOT));
+            int index = slotIndex[slot];
+            while (index + 1 < start.length && start[index + 1] <= timeAsSeconds)
+                index++;
+            return value[index];
+        }
     }
 
     protected String format_HH_MM(Integer timeAsSeconds) {
@@ -399,9 +439,13 @@ public class Profile {
     }
 
     public double getIsfTimeFromMidnight(int timeAsSeconds) {
-        if (isf_v == null)
-            isf_v = convertToSparseArray(isf);
-        return getValueToTime(isf_v, timeAsSeconds);
+        Schedule schedule = isfSchedule;
+        if (schedule == null) {
+            if (isf_v == null)
+                isf_v = convertToSparseArray(isf);
+            isfSchedule = schedule = new Schedule(isf_v);
+        }
+        return schedule.get(timeAsSeconds);
     }
 
     public String getIsfList() {
@@ -432,9 +476,13 @@ public class Profile {
     }
 
     public double getIcTimeFromMidnight(int timeAsSeconds) {
-        if (ic_v == null)
-            ic_v = convertToSparseArray(ic);
-        return getValueToTime(ic_v, timeAsSeconds);
+        Schedule schedule = icSchedule;
+        if (schedule == null) {
+            if (ic_v == null)
+                ic_v = convertToSparseArray(ic);
+            icSchedule = schedule = new Schedule(ic_v);
+        }
+        return schedule.get(timeAsSeconds);
     }
 
     public String getIcList() {
@@ -464,11 +512,17 @@ public class Profile {
         return getBasalTimeFromMidnight(secondsFromMidnight(time));
     }
 
-    public synchronized double getBasalTimeFromMidnight(int timeAsSeconds) {
-        if (basal_v == null) {
+    public double getBasalTimeFromMidnight(int timeAsSeconds) {
+        Schedule schedule = basalSchedule;
+        if (schedule == null)
+            basalSchedule = schedule = compileBasal();
+        return schedule.get(timeAsSeconds);
+    }
+
+    private synchronized Schedule compileBasal() {
+        if (basal_v == null)
             basal_v = convertToSparseArray(basal);
-        }
-        return getValueToTime(basal_v, timeAsSeconds);
+        return new Schedule(basal_v);
     }
 
     public String getBasalList() {
@@ -528,9 +582,13 @@ public class Profile {
     }
 
     double getTargetLowTimeFromMidnight(int timeAsSeconds) {
-        if (targetLow_v == null)
-            targetLow_v = convertToSparseArray(targetLow);
-        return getValueToTime(targetLow_v, timeAsSeconds);
+        Schedule schedule = targetLowSchedule;
+        if (schedule == null) {
+            if (targetLow_v == null)
+                targetLow_v = convertToSparseArray(targetLow);
+            targetLowSchedule = schedule = new Schedule(targetLow_v);
+        }
+        return schedule.get(timeAsSeconds);
     }
 
     public double getTargetHighMgdl() {
@@ -542,9 +600,13 @@ public class Profile {
     }
 
     double getTargetHighTimeFromMidnight(int timeAsSeconds) {
-        if (targetHigh_v == null)
-            targetHigh_v = convertToSparseArray(targetHigh);
-        return getValueToTime(targetHigh_v, timeAsSeconds);
+        Schedule schedule = targetHighSchedule;
+        if (schedule == null) {
+            if (targetHigh_v == null)
+                targetHigh_v = convertToSparseArray(targetHigh);
+            targetHighSchedule = schedule = new Schedule(targetHigh_v);
+        }
+        return schedule.get(timeAsSeconds);
     }
 
     public class TargetValue {
@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import info.nightscout.androidaps.interfaces.Interval;
@@ -22,6 +23,7 @@ public class ProfileIntervals<T extends Interval> {
     private static Logger log = LoggerFactory.getLogger(ProfileIntervals.class);
 
     private LongSparseArray<T> rawData; // oldest at index 0
+    private long[] boundaries; // built on request, cleared on any change
 
     public ProfileIntervals () {
         rawData = new LongSparseArray<>();
@@ -33,6 +35,7 @@ public class ProfileIntervals<T extends Interval> {
 
     public synchronized ProfileIntervals<T> reset() {
         rawData = new LongSparseArray<>();
+        boundaries = null;
         return this;
     }
 
@@ -52,6 +55,7 @@ public class ProfileIntervals<T extends Interval> {
     }
 
     private synchronized void merge() {
+        boundaries = null;
         for (int index = 0; index < rawData.size() - 1; index++) {
             Interval i = rawData.valueAt(index);
             long startOfNewer = rawData.valueAt(index + 1).start();
@@ -75,6 +79,28 @@ public class ProfileIntervals<T extends Interval> {
         return null;
     }
 
+    /**
+     * Sorted starts and ends of all intervals. Between two adjacent values
+     * getValueToTime returns the same interval, so the result can be reused for that range.
+     * The same array instance is returned until data is changed.
+     */
+    public synchronized long[] getBoundaries() {
+        if (boundaries == null) {
+            long[] values = new long[rawData.size() * 2];
+            for (int index = 0; index < rawData.size(); index++) {
+                values[2 * index] = rawData.valueAt(index).start();
+                values[2 * index + 1] = rawData.valueAt(index).end();
+            }
+            Arrays.sort(values);
+            int size = 0;
+            for (long value : values)
+                if (size == 0 || values[size - 1] != value)
+                    values[size++] = value;
+            boundaries = Arrays.copyOf(values, size);
+        }
+        return boundaries;
+    }
+
     public synchronized List<T> getList() {
         List<T> list = new ArrayList<>();
         for (int i = 0; i < rawData.size(); i++)
@@ -0,0 +1,68 @@
+package info.nightscout.androidaps.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merge of many incoming readings (NS sync, backfill) with readings already stored in the same time range.
+ * Duplicates in incoming list are removed (last wins), dates must be already rounded.
+ */
+class BgReadingBatch {
+
+    private final TreeMap<Long, BgReading> incoming = new TreeMap<>();
+
+    final List<BgReading> toCreate = new ArrayList<>();
+    final List<BgReading> toUpdate = new ArrayList<>();
+    // newest new or changed reading, null if nothing changed
+    BgReading newest = null;
+    // oldest changed reading older than newest reading stored before the batch, 0 if none
+    long historyChangeFrom = 0;
+
+    BgReadingBatch(List<BgReading> bgReadings) {
+        for (BgReading bgReading : bgReadings)
+            incoming.put(bgReading.date, bgReading);
+    }
+
+    long from() {
+        return incoming.firstKey();
+    }
+
+    long to() {
+        return incoming.lastKey();
+    }
+
+    /**
+     * @param existing       stored readings between from() and to()
+     * @param lastStoredDate date of newest reading stored before the batch, 0 if none
+     */
+    void merge(List<BgReading> existing, long lastStoredDate) {
+        Map<Long, BgReading> stored = new HashMap<>();
+        for (BgReading old : existing)
+            stored.put(old.date, old);
+
+        long earliestChange = Long.MAX_VALUE;
+        for (BgReading bgReading : incoming.values()) {
+            BgReading old = stored.get(bgReading.date);
+            if (old == null) {
+                toCreate.add(bgReading);
+            } else if (!old.isEqual(bgReading)) {
+                old.copyFrom(bgReading);
+                toUpdate.add(old);
+            } else {
+                continue; // unchanged
+            }
+            earliestChange = Math.min(earliestChange, bgReading.date);
+            newest = bgReading;
+        }
+        // only backfilled or corrected older values invalidate cached calculations
+        if (earliestChange < lastStoredDate)
+            historyChangeFrom = earliestChange;
+    }
+
+    boolean isHistoryChange() {
+        return historyChangeFrom != 0;
+    }
+}
@@ -13,6 +13,7 @@ import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.Where;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.table.TableUtils;
 
 import org.json.JSONException;
@@ -25,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -61,6 +63,7 @@ import info.nightscout.androidaps.plugins.pump.insight.database.InsightPumpID;
 import info.nightscout.androidaps.plugins.pump.omnipod.driver.db.PodHistory;
 import info.nightscout.androidaps.plugins.pump.virtual.VirtualPumpPlugin;
 import info.nightscout.androidaps.utils.JsonHelper;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.PercentageSplitter;
 import info.nightscout.androidaps.utils.ToastUtils;
 
@@ -90,7 +93,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public static final String DATABASE_INSIGHT_PUMP_IDS = "InsightPumpIDs";
     public static final String DATABASE_POD_HISTORY = "PodHistory";
 
-    private static final int DATABASE_VERSION = 12;
+    private static final int DATABASE_VERSION = 14;
 
     public static Long earliestDataChange = null;
 
@@ -115,6 +118,18 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     private int oldVersion = 0;
     private int newVersion = 0;
 
+    private final QueryTimings queryTimings = new QueryTimings();
+
+    // tables queried by NS _id
+    private static final String[] INDEXED_TABLES = {
+            DATABASE_BGREADINGS,
+            DATABASE_TEMPORARYBASALS,
+            DATABASE_EXTENDEDBOLUSES,
+            DATABASE_CAREPORTALEVENTS,
+            DATABASE_PROFILESWITCHES,
+            DATABASE_TEMPTARGETS
+    };
+
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         onCreate(getWritableDatabase(), getConnectionSource());
@@ -144,6 +159,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = \"" + DATABASE_INSIGHT_BOLUS_IDS + "\")");
             database.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT \"" + DATABASE_INSIGHT_PUMP_IDS + "\", " + System.currentTimeMillis() + " " +
                     "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = \"" + DATABASE_INSIGHT_PUMP_IDS + "\")");
+            createIndexes(database);
         } catch (SQLException e) {
             log.error("Can't create database", e);
             throw new RuntimeException(e);
@@ -179,12 +195,29 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 database.execSQL("UPDATE sqlite_sequence SET seq = " + System.currentTimeMillis() + " WHERE name = \"" + DATABASE_INSIGHT_BOLUS_IDS + "\"");
                 database.execSQL("UPDATE sqlite_sequence SET seq = " + System.currentTimeMillis() + " WHERE name = \"" + DATABASE_INSIGHT_PUMP_IDS + "\"");
             }
+            if (oldVersion < 13) {
+                log.info("Creating indexes");
+                createIndexes(database);
+            }
+            if (oldVersion >= 10 && oldVersion < 14) {
+                // table created in older versions doesn't have pump time offset
+                database.execSQL("ALTER TABLE `" + DATABASE_INSIGHT_HISTORY_OFFSETS + "` ADD COLUMN `timeOffset` BIGINT");
+            }
         } catch (SQLException e) {
             log.error("Can't drop databases", e);
             throw new RuntimeException(e);
         }
     }
 
+    // IF (NOT) EXISTS makes it safe to call on every start and after table reset
+    private void createIndexes(SQLiteDatabase database) {
+        for (String table : INDEXED_TABLES) {
+            // date is primary key, so date ranges use its index already, (date, isValid) index was only extra write cost
+            database.execSQL("DROP INDEX IF EXISTS `" + table + "_date_isValid_idx`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `" + table + "__id_idx` ON `" + table + "` (`_id`)");
+        }
+    }
+
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         log.info("Do nothing for downgrading...");
@@ -227,6 +260,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTableIfNotExists(connectionSource, ProfileSwitch.class);
             TableUtils.createTableIfNotExists(connectionSource, TDD.class);
             TableUtils.createTableIfNotExists(connectionSource, PodHistory.class);
+            createIndexes(getWritableDatabase());
             updateEarliestDataChange(0);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -365,6 +399,38 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return getDao(PodHistory.class);
     }
 
+    /**
+     * Run many writes (NS sync) in one transaction instead of one transaction per record
+     */
+    public void runInTransaction(Runnable runnable) {
+        try {
+            TransactionManager.callInTransaction(getConnectionSource(), () -> {
+                runnable.run();
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    /**
+     * Like runInTransaction, but failure is passed to caller which must not continue as if data was stored
+     */
+    public <T> T callInTransaction(Callable<T> callable) throws SQLException {
+        return TransactionManager.callInTransaction(getConnectionSource(), callable);
+    }
+
+    public String getQueryTimingReport() {
+        return queryTimings.report();
+    }
+
+    private <T> List<T> timedQuery(String name, Dao<T, Long> dao, PreparedQuery<T> preparedQuery) throws SQLException {
+        long start = System.nanoTime();
+        List<T> result = dao.query(preparedQuery);
+        queryTimings.record(name, System.nanoTime() - start, result.size());
+        return result;
+    }
+
     public static long roundDateToSec(long date) {
         long rounded = date - date % 1000;
         if (rounded != date)
@@ -401,6 +467,54 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return false;
     }
 
+    /**
+     * Store many readings (NS sync, backfill) in one transaction
+     * Duplicates in the list are removed (last wins), existing records are loaded by one query
+     * and only one EventNewBG is fired for the whole batch
+     *
+     * @return number of new records
+     */
+    public int createIfNotExists(List<BgReading> bgReadings, String from) {
+        if (bgReadings.isEmpty()) return 0;
+        for (BgReading bgReading : bgReadings)
+            bgReading.date = roundDateToSec(bgReading.date);
+        BgReadingBatch batch = new BgReadingBatch(bgReadings);
+        try {
+            Dao<BgReading, Long> dao = getDaoBgReadings();
+            dao.callBatchTasks(() -> {
+                QueryBuilder<BgReading, Long> lastQuery = dao.queryBuilder();
+                lastQuery.orderBy("date", false).limit(1L);
+                BgReading lastStored = dao.queryForFirst(lastQuery.prepare());
+
+                QueryBuilder<BgReading, Long> queryBuilder = dao.queryBuilder();
+                queryBuilder.where().between("date", batch.from(), batch.to());
+                batch.merge(dao.query(queryBuilder.prepare()), lastStored != null ? lastStored.date : 0);
+
+                for (BgReading bgReading : batch.toCreate) {
+                    dao.create(bgReading);
+                    if (L.isEnabled(L.DATABASE))
+                        log.debug("BG: New record from: " + from + " " + bgReading.toString());
+                }
+                for (BgReading old : batch.toUpdate) {
+                    dao.update(old);
+                    if (L.isEnabled(L.DATABASE))
+                        log.debug("BG: Updating record from: " + from + " New data: " + old.toString());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Unhandled exception", e);
+            return 0;
+        }
+        if (batch.newest != null) {
+            scheduleBgChange(batch.newest);
+            // older values were backfilled, cached calculations must be invalidated
+            if (batch.isHistoryChange())
+                RxBus.INSTANCE.send(new EventNewHistoryData(batch.historyChangeFrom));
+        }
+        return batch.toCreate.size();
+    }
+
     public void update(BgReading bgReading) {
         bgReading.date = roundDateToSec(bgReading.date);
         try {
@@ -415,6 +529,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             public void run() {
                 if (L.isEnabled(L.DATABASE))
                     log.debug("Firing EventNewBg");
+                LoopTimings.start();
                 RxBus.INSTANCE.send(new EventNewBG(bgReading));
                 scheduledBgPost = null;
             }
@@ -472,7 +587,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills).and().ge("value", 39).and().eq("isValid", true);
             PreparedQuery<BgReading> preparedQuery = queryBuilder.prepare();
-            bgReadings = daoBgreadings.query(preparedQuery);
+            bgReadings = timedQuery("getBgreadingsDataFromTime", daoBgreadings, preparedQuery);
             return bgReadings;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -489,7 +604,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.between("date", start, end).and().ge("value", 39).and().eq("isValid", true);
             PreparedQuery<BgReading> preparedQuery = queryBuilder.prepare();
-            bgReadings = daoBgreadings.query(preparedQuery);
+            bgReadings = timedQuery("getBgreadingsDataFromTime", daoBgreadings, preparedQuery);
             return bgReadings;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -506,7 +621,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills);
             PreparedQuery<BgReading> preparedQuery = queryBuilder.prepare();
-            bgReadings = daoBgreadings.query(preparedQuery);
+            bgReadings = timedQuery("getAllBgreadingsDataFromTime", daoBgreadings, preparedQuery);
             return bgReadings;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -583,6 +698,18 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return 0;
     }
 
+    // chunked to stay below SQLite limit of query parameters
+    public int deleteDbRequests(List<String> nsClientIds) {
+        int deleted = 0;
+        try {
+            for (int from = 0; from < nsClientIds.size(); from += 500)
+                deleted += getDaoDbRequest().deleteIds(nsClientIds.subList(from, Math.min(from + 500, nsClientIds.size())));
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+        return deleted;
+    }
+
     public void deleteDbRequestbyMongoId(String action, String id) {
         try {
             QueryBuilder<DbRequest, String> queryBuilder = getDaoDbRequest().queryBuilder();
@@ -639,7 +766,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills);
             PreparedQuery<TempTarget> preparedQuery = queryBuilder.prepare();
-            tempTargets = daoTempTargets.query(preparedQuery);
+            tempTargets = timedQuery("getTemptargetsDataFromTime", daoTempTargets, preparedQuery);
             return tempTargets;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -656,7 +783,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.between("date", from, to);
             PreparedQuery<TempTarget> preparedQuery = queryBuilder.prepare();
-            tempTargets = daoTempTargets.query(preparedQuery);
+            tempTargets = timedQuery("getTemptargetsDataFromTime", daoTempTargets, preparedQuery);
             return tempTargets;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1004,7 +1131,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills);
             PreparedQuery<TemporaryBasal> preparedQuery = queryBuilder.prepare();
-            tempbasals = getDaoTemporaryBasal().query(preparedQuery);
+            tempbasals = timedQuery("getTemporaryBasalsDataFromTime", getDaoTemporaryBasal(), preparedQuery);
             return tempbasals;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1020,7 +1147,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.between("date", from, to);
             PreparedQuery<TemporaryBasal> preparedQuery = queryBuilder.prepare();
-            tempbasals = getDaoTemporaryBasal().query(preparedQuery);
+            tempbasals = timedQuery("getTemporaryBasalsDataFromTime", getDaoTemporaryBasal(), preparedQuery);
             return tempbasals;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1302,7 +1429,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills);
             PreparedQuery<ExtendedBolus> preparedQuery = queryBuilder.prepare();
-            extendedBoluses = getDaoExtendedBolus().query(preparedQuery);
+            extendedBoluses = timedQuery("getExtendedBolusDataFromTime", getDaoExtendedBolus(), preparedQuery);
             return extendedBoluses;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1446,7 +1573,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills).and().isNotNull("json").and().isNotNull("eventType");
             PreparedQuery<CareportalEvent> preparedQuery = queryBuilder.prepare();
-            careportalEvents = getDaoCareportalEvents().query(preparedQuery);
+            careportalEvents = timedQuery("getCareportalEventsFromTime", getDaoCareportalEvents(), preparedQuery);
             careportalEvents = preprocessOpenAPSOfflineEvents(careportalEvents);
             return careportalEvents;
         } catch (SQLException e) {
@@ -1463,7 +1590,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.between("date", start, end).and().isNotNull("json").and().isNotNull("eventType");
             PreparedQuery<CareportalEvent> preparedQuery = queryBuilder.prepare();
-            careportalEvents = getDaoCareportalEvents().query(preparedQuery);
+            careportalEvents = timedQuery("getCareportalEvents", getDaoCareportalEvents(), preparedQuery);
             careportalEvents = preprocessOpenAPSOfflineEvents(careportalEvents);
             return careportalEvents;
         } catch (SQLException e) {
@@ -1492,7 +1619,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills).and().eq("eventType", type).and().isNotNull("json");
             PreparedQuery<CareportalEvent> preparedQuery = queryBuilder.prepare();
-            careportalEvents = getDaoCareportalEvents().query(preparedQuery);
+            careportalEvents = timedQuery("getCareportalEventsFromTime", getDaoCareportalEvents(), preparedQuery);
             careportalEvents = preprocessOpenAPSOfflineEvents(careportalEvents);
             return careportalEvents;
         } catch (SQLException e) {
@@ -1509,7 +1636,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.isNotNull("json").and().isNotNull("eventType");
             PreparedQuery<CareportalEvent> preparedQuery = queryBuilder.prepare();
-            careportalEvents = getDaoCareportalEvents().query(preparedQuery);
+            careportalEvents = timedQuery("getCareportalEvents", getDaoCareportalEvents(), preparedQuery);
             careportalEvents = preprocessOpenAPSOfflineEvents(careportalEvents);
             return careportalEvents;
         } catch (SQLException e) {
@@ -1605,7 +1732,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", from);
             PreparedQuery<ProfileSwitch> preparedQuery = queryBuilder.prepare();
-            profileSwitches = daoProfileSwitch.query(preparedQuery);
+            profileSwitches = timedQuery("getProfileSwitchData", daoProfileSwitch, preparedQuery);
             //add last one without duration
             ProfileSwitch last = getLastProfileSwitchWithoutDuration();
             if (last != null) {
@@ -1630,7 +1757,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.eq("durationInMinutes", 0);
             PreparedQuery<ProfileSwitch> preparedQuery = queryBuilder.prepare();
-            profileSwitches = daoProfileSwitch.query(preparedQuery);
+            profileSwitches = timedQuery("getLastProfileSwitchWithoutDuration", daoProfileSwitch, preparedQuery);
             if (profileSwitches.size() > 0)
                 return profileSwitches.get(0);
             else
@@ -1651,7 +1778,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.ge("date", mills);
             PreparedQuery<ProfileSwitch> preparedQuery = queryBuilder.prepare();
-            profileSwitches = daoProfileSwitch.query(preparedQuery);
+            profileSwitches = timedQuery("getProfileSwitchEventsFromTime", daoProfileSwitch, preparedQuery);
             return profileSwitches;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1669,7 +1796,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             Where where = queryBuilder.where();
             where.between("date", from, to);
             PreparedQuery<ProfileSwitch> preparedQuery = queryBuilder.prepare();
-            profileSwitches = daoProfileSwitch.query(preparedQuery);
+            profileSwitches = timedQuery("getProfileSwitchEventsFromTime", daoProfileSwitch, preparedQuery);
             return profileSwitches;
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -0,0 +1,65 @@
+package info.nightscout.androidaps.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.utils.T;
+
+/**
+ * Count, duration and returned rows of DatabaseHelper history queries
+ * Report is logged periodically when DATABASE logging is enabled
+ */
+public class QueryTimings {
+    private static Logger log = LoggerFactory.getLogger(L.DATABASE);
+
+    private static final long REPORT_INTERVAL = T.mins(30).msecs();
+
+    private static class Stats {
+        int count;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+    }
+
+    private final Map<String, Stats> stats = new TreeMap<>();
+    private long lastReport = System.currentTimeMillis();
+
+    void record(String name, long nanos, int rows) {
+        boolean doReport = false;
+        synchronized (stats) {
+            Stats s = stats.get(name);
+            if (s == null) {
+                s = new Stats();
+                stats.put(name, s);
+            }
+            s.count++;
+            s.totalNanos += nanos;
+            s.maxNanos = Math.max(s.maxNanos, nanos);
+            s.rows += rows;
+            long now = System.currentTimeMillis();
+            if (now - lastReport > REPORT_INTERVAL) {
+                lastReport = now;
+                doReport = true;
+            }
+        }
+        if (doReport && L.isEnabled(L.DATABASE))
+            log.debug(report());
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder("Query timings:");
+        synchronized (stats) {
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                Stats s = entry.getValue();
+                sb.append(String.format(Locale.ENGLISH, "\n%s count: %d avg: %.1fms max: %.1fms avg rows: %d",
+                        entry.getKey(), s.count, s.totalNanos / 1e6 / s.count, s.maxNanos / 1e6, s.rows / s.count));
+            }
+        }
+        return sb.toString();
+    }
+}
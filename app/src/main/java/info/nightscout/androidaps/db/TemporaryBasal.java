@@ -1,5 +1,7 @@
 package info.nightscout.androidaps.db;
 
+import androidx.annotation.Nullable;
+
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
@@ -350,6 +352,89 @@ public class TemporaryBasal implements Interval, DbObjectBase {
         return result;
     }
 
+    /**
+     * iobCalc for all times at once, results are added to totals.
+     * Temp must end before times[0] (cut to now for predictions). Then 5 min parts of delivered insulin
+     * don't depend on time of calculation and are computed only once, only insulin curve is evaluated per time.
+     * lastAutosensResult == null selects iobCalc(time, profile) variant
+     */
+    public void iobCalc(long[] times, IobTotal[] totals, Profile profile, @Nullable AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
+
+        if (isFakeExtended) {
+            log.error("iobCalc should only be called on Extended boluses separately");
+            return;
+        }
+
+        InsulinInterface insulinInterface = ConfigBuilderPlugin.getPlugin().getActiveInsulin();
+
+        int realDuration = getDurationToTime(times[0]);
+        if (realDuration <= 0) return;
+
+        double sensitivityRatio = 1d;
+        if (lastAutosensResult != null) {
+            sensitivityRatio = lastAutosensResult.ratio;
+            double normalTarget = 100;
+            if (exercise_mode && isTempTarget && profile.getTargetMgdl() >= normalTarget + 5) {
+                double c = half_basal_exercise_target - normalTarget;
+                sensitivityRatio = c / (c + profile.getTargetMgdl() - normalTarget);
+            }
+        }
+
+        double dia = profile.getDia();
+        int aboutFiveMinIntervals = (int) Math.ceil(realDuration / 5d);
+        // int division is intentional in the variant without autosens, see iobCalc(time, profile)
+        double tempBolusSpacing = lastAutosensResult == null ? realDuration / aboutFiveMinIntervals : (double) realDuration / aboutFiveMinIntervals;
+
+        IobTotal[] results = new IobTotal[times.length];
+        for (int i = 0; i < times.length; i++)
+            results[i] = new IobTotal(times[i]);
+
+        for (long j = 0L; j < aboutFiveMinIntervals; j++) {
+            // find middle of the interval
+            long calcdate = (long) (date + j * tempBolusSpacing * 60 * 1000 + 0.5d * tempBolusSpacing * 60 * 1000);
+
+            double basalRate = profile.getBasal(calcdate);
+            double netBasalRate;
+            if (lastAutosensResult == null) {
+                if (isAbsolute) {
+                    netBasalRate = absoluteRate - basalRate;
+                } else {
+                    netBasalRate = (percentRate - 100) / 100d * basalRate;
+                }
+            } else {
+                if (isAbsolute) {
+                    netBasalRate = absoluteRate - basalRate * sensitivityRatio;
+                } else {
+                    netBasalRate = percentRate / 100d * basalRate - basalRate * sensitivityRatio;
+                }
+            }
+            double tempBolusSize = netBasalRate * tempBolusSpacing / 60d;
+
+            Treatment tempBolusPart = new Treatment();
+            tempBolusPart.insulin = tempBolusSize;
+            tempBolusPart.date = calcdate;
+
+            for (int i = 0; i < times.length; i++) {
+                long time = times[i];
+                double dia_ago = time - dia * 60 * 60 * 1000;
+                if (calcdate > dia_ago && calcdate <= time) {
+                    IobTotal result = results[i];
+                    result.netInsulin += tempBolusSize;
+
+                    Iob aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia);
+                    result.basaliob += aIOB.iobContrib;
+                    result.activity += aIOB.activityContrib;
+                    result.netbasalinsulin += tempBolusPart.insulin;
+                    if (tempBolusPart.insulin > 0) {
+                        result.hightempinsulin += tempBolusPart.insulin;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < times.length; i++)
+            totals[i].plus(results[i]);
+    }
+
     public int getRealDuration() {
         return getDurationToTime(System.currentTimeMillis());
     }
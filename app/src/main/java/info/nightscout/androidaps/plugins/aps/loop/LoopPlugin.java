@@ -12,6 +12,7 @@ import android.os.Build;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import org.json.JSONException;
@@ -61,6 +62,7 @@ import info.nightscout.androidaps.queue.Callback;
 import info.nightscout.androidaps.queue.commands.Command;
 import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.FabricPrivacy;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.SP;
 import info.nightscout.androidaps.utils.T;
 import io.reactivex.disposables.CompositeDisposable;
@@ -146,14 +148,17 @@ public class LoopPlugin extends PluginBase {
                     // Autosens calculation not triggered by a new BG
                     if (!(event.getCause() instanceof EventNewBG)) return;
 
+                    LoopTimings.Trace trace = LoopTimings.current();
                     BgReading bgReading = DatabaseHelper.actualBg();
-                    // BG outdated
-                    if (bgReading == null) return;
-                    // already looped with that value
-                    if (bgReading.date <= lastBgTriggeredRun) return;
+                    // BG outdated or already looped with that value
+                    if (bgReading == null || bgReading.date <= lastBgTriggeredRun) {
+                        LoopTimings.finish(trace, "skipped");
+                        return;
+                    }
 
                     lastBgTriggeredRun = bgReading.date;
-                    invoke("AutosenseCalculation for " + bgReading, true);
+                    LoopTimings.mark(trace, LoopTimings.Stage.LOOP);
+                    invoke("AutosenseCalculation for " + bgReading, true, false, trace);
                 }, FabricPrivacy::logException)
         );
     }
@@ -274,6 +279,12 @@ public class LoopPlugin extends PluginBase {
     }
 
     public synchronized void invoke(String initiator, boolean allowNotification, boolean tempBasalFallback) {
+        invoke(initiator, allowNotification, tempBasalFallback, null);
+    }
+
+    // trace is passed only by run triggered by new BG, other runs are not timed
+    private synchronized void invoke(String initiator, boolean allowNotification, boolean tempBasalFallback, @Nullable LoopTimings.Trace trace) {
+        boolean enactQueued = false;
         try {
             if (L.isEnabled(L.APS))
                 log.debug("invoke from " + initiator);
@@ -308,6 +319,7 @@ public class LoopPlugin extends PluginBase {
             if (usedAPS != null && ((PluginBase) usedAPS).isEnabled(PluginType.APS)) {
                 usedAPS.invoke(initiator, tempBasalFallback);
                 result = usedAPS.getLastAPSResult();
+                LoopTimings.mark(trace, LoopTimings.Stage.APS);
             }
 
             // Check if we have any result
@@ -383,9 +395,14 @@ public class LoopPlugin extends PluginBase {
                         lastRun.smbSetByPump = waiting;
                     RxBus.INSTANCE.send(new EventLoopUpdateGui());
                     FabricPrivacy.getInstance().logCustom("APSRequest");
+                    LoopTimings.mark(trace, LoopTimings.Stage.QUEUE);
+                    enactQueued = true;
                     applyTBRRequest(resultAfterConstraints, profile, new Callback() {
                         @Override
                         public void run() {
+                            LoopTimings.mark(trace, LoopTimings.Stage.TBR);
+                            if (!(result.enacted || result.success) || !resultAfterConstraints.bolusRequested)
+                                LoopTimings.finish(trace, result.success ? "tbr" : "tbr failed");
                             if (result.enacted || result.success) {
                                 lastRun.tbrSetByPump = result;
                                 lastRun.lastTBRRequest = lastRun.lastAPSRun.getTime();
@@ -395,6 +412,8 @@ public class LoopPlugin extends PluginBase {
                                     @Override
                                     public void run() {
                                         //Callback is only called if a bolus was acutally requested
+                                        LoopTimings.mark(trace, LoopTimings.Stage.SMB);
+                                        LoopTimings.finish(trace, result.success ? "smb" : "smb failed");
                                         if (result.enacted || result.success) {
                                             lastRun.smbSetByPump = result;
                                             lastRun.lastSMBRequest = lastRun.lastAPSRun.getTime();
@@ -465,6 +484,9 @@ public class LoopPlugin extends PluginBase {
 
             RxBus.INSTANCE.send(new EventLoopUpdateGui());
         } finally {
+            // otherwise trace is finished by pump callback
+            if (!enactQueued)
+                LoopTimings.finish(trace, "no enact");
             if (L.isEnabled(L.APS))
                 log.debug("invoke end");
         }
@@ -0,0 +1,63 @@
+package info.nightscout.androidaps.plugins.aps.loop;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.aps.openAPSMA.LoggerCallback;
+
+/**
+ * Rhino scripts of determine-basal adapters are read and compiled only once per app run.
+ * Standard JS objects and LoggerCallback class live in one sealed shared scope,
+ * every invocation gets its own empty scope on top of it so no state is shared between loop runs.
+ * <p>
+ * Scripts are compiled in interpreted mode (optimization level -1) to be Android compatible,
+ * caller must set the same optimization level on the entered Context.
+ */
+public class ScriptCache {
+
+    private static ScriptableObject sharedScope = null;
+    private static final Map<String, Script> scripts = new HashMap<>();
+
+    public static synchronized Scriptable newScope(Context rhino) throws IllegalAccessException, InstantiationException, InvocationTargetException {
+        if (sharedScope == null) {
+            ScriptableObject scope = rhino.initStandardObjects(null, true);
+            ScriptableObject.defineClass(scope, LoggerCallback.class);
+            scope.sealObject();
+            sharedScope = scope;
+        }
+        Scriptable scope = rhino.newObject(sharedScope);
+        scope.setPrototype(sharedScope);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    public static synchronized Script getFile(Context rhino, ScriptReader scriptReader, String fileName, String sourceName) throws IOException {
+        Script script = scripts.get(fileName);
+        if (script == null) {
+            String source = new String(scriptReader.readFile(fileName), StandardCharsets.UTF_8);
+            if (source.startsWith("#!/usr/bin/env node")) {
+                source = source.substring(20);
+            }
+            script = rhino.compileString(source, sourceName, 0, null);
+            scripts.put(fileName, script);
+        }
+        return script;
+    }
+
+    public static synchronized Script getSource(Context rhino, String source, String sourceName) {
+        Script script = scripts.get(source);
+        if (script == null) {
+            script = rhino.compileString(source, sourceName, 0, null);
+            scripts.put(source, script);
+        }
+        return script;
+    }
+}
@@ -8,13 +8,11 @@ import org.mozilla.javascript.NativeJSON;
 import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.ScriptableObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
 
 import javax.annotation.Nullable;
 
@@ -27,6 +25,7 @@ import info.nightscout.androidaps.data.MealData;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.plugins.aps.loop.ScriptCache;
 import info.nightscout.androidaps.plugins.aps.loop.ScriptReader;
 import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.utils.SP;
@@ -56,29 +55,29 @@ public class DetermineBasalAdapterMAJS {
         DetermineBasalResultMA determineBasalResultMA = null;
 
         Context rhino = Context.enter();
-        Scriptable scope = rhino.initStandardObjects();
         // Turn off optimization to make Rhino Android compatible
         rhino.setOptimizationLevel(-1);
 
         try {
+            // compiled scripts and standard objects are shared, globals are per invocation
+            Scriptable scope = ScriptCache.newScope(rhino);
 
             //register logger callback for console.log and console.error
-            ScriptableObject.defineClass(scope, LoggerCallback.class);
             Scriptable myLogger = rhino.newObject(scope, "LoggerCallback", null);
             scope.put("console", scope, myLogger);
 
             //set module parent
-            rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null);
+            ScriptCache.getSource(rhino, "var module = {\"parent\":Boolean(1)};", "JavaScript").exec(rhino, scope);
 
             //generate functions "determine_basal" and "setTempBasal"
-            rhino.evaluateString(scope, readFile("OpenAPSMA/determine-basal.js"), "JavaScript", 0, null);
+            ScriptCache.getFile(rhino, mScriptReader, "OpenAPSMA/determine-basal.js", "JavaScript").exec(rhino, scope);
 
             String setTempBasalCode = "var setTempBasal = function (rate, duration, profile, rT, offline) {" +
                     "rT.duration = duration;\n" +
                     "    rT.rate = rate;" +
                     "return rT;" +
                     "};";
-            rhino.evaluateString(scope, setTempBasalCode, "setTempBasal.js", 0, null);
+            ScriptCache.getSource(rhino, setTempBasalCode, "setTempBasal.js").exec(rhino, scope);
             Object determineBasalObj = scope.get("determine_basal", scope);
             Object setTempBasalObj = scope.get("setTempBasal", scope);
 
@@ -208,15 +207,6 @@ public class DetermineBasalAdapterMAJS {
         mMealData.put("boluses", mealData.boluses);
     }
 
-    private String readFile(String filename) throws IOException {
-        byte[] bytes = mScriptReader.readFile(filename);
-        String string = new String(bytes, StandardCharsets.UTF_8);
-        if (string.startsWith("#!/usr/bin/env node")) {
-            string = string.substring(20);
-        }
-        return string;
-    }
-
     private Object makeParam(JSONObject jsonObject, Context rhino, Scriptable scope) {
         Object param = NativeJSON.parse(rhino, scope, jsonObject.toString(), (context, scriptable, scriptable1, objects) -> objects[1]);
         return param;
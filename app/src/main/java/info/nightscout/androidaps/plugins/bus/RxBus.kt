@@ -2,22 +2,66 @@ package info.nightscout.androidaps.plugins.bus
 
 import info.nightscout.androidaps.events.Event
 import io.reactivex.Observable
+import io.reactivex.functions.BiFunction
 import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.PublishSubject
+import io.reactivex.subjects.Subject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 
 // Use object so we have a singleton instance
 object RxBus {
 
-    private val publisher = PublishSubject.create<Event>()
+    // one subject per subscribed event class, event is delivered only to subjects of its class and superclasses
+    private val subjects = ConcurrentHashMap<Class<*>, Subject<Any>>()
+    // resolved subjects for sent event class, cleared when new event class is subscribed
+    private val dispatch = ConcurrentHashMap<Class<*>, List<Subject<Any>>>()
 
     fun send(event: Event) {
-        publisher.onNext(event)
+        for (subject in subjectsFor(event.javaClass))
+            subject.onNext(event)
     }
 
     // Listen should return an Observable and not the publisher
-    // Using ofType we filter only events that match that class type
+    // Subject contains only events of eventType (or subclasses) so no filtering is needed
     fun <T> toObservable(eventType: Class<T>): Observable<T> =
-            publisher
+            subjectFor(eventType)
                     .subscribeOn(Schedulers.io())
-                    .ofType(eventType)
+                    .cast(eventType)
+
+    // Latest wins: first event of a burst is delivered immediately, then at most one (the latest) per window
+    fun <T> toObservable(eventType: Class<T>, window: Long, unit: TimeUnit): Observable<T> =
+            toObservable(eventType)
+                    .throttleLatest(window, unit, true)
+
+    // Events received within window are merged to one, use when any event of the burst can't be dropped
+    // Steady stream is delivered at latest maxLatency after first event
+    fun <T> toObservable(eventType: Class<T>, window: Long, maxLatency: Long, unit: TimeUnit, merge: BiFunction<T, T, T>): Observable<T> =
+            toBurstObservable(eventType, window, maxLatency, unit)
+                    .map { events -> events.reduce { e1, e2 -> merge.apply(e1, e2) } }
+
+    // Burst of events is delivered as one list when no new event comes within window,
+    // or maxLatency after first event of the list if events keep coming (long sync).
+    // Boundaries are driven by events, so no timer runs while bus is quiet
+    fun <T> toBurstObservable(eventType: Class<T>, window: Long, maxLatency: Long, unit: TimeUnit): Observable<List<T>> =
+            toObservable(eventType)
+                    .publish { events ->
+                        events.buffer(events.debounce(window, unit).map { Unit }
+                                .mergeWith(events.throttleFirst(maxLatency, unit).flatMap { Observable.timer(maxLatency, unit) }.map { Unit }))
+                    }
+                    // buffer closed by debounce can be closed again by latency timer with nothing inside
+                    .filter { events -> events.isNotEmpty() }
+
+    private fun subjectFor(eventType: Class<*>): Subject<Any> =
+            subjects[eventType] ?: synchronized(this) {
+                subjects[eventType] ?: PublishSubject.create<Any>().toSerialized().also {
+                    subjects[eventType] = it
+                    dispatch.clear()
+                }
+            }
+
+    private fun subjectsFor(eventClass: Class<*>): List<Subject<Any>> =
+            dispatch[eventClass] ?: synchronized(this) {
+                subjects.filterKeys { it.isAssignableFrom(eventClass) }.values.toList().also { dispatch[eventClass] = it }
+            }
 }
@@ -10,6 +10,8 @@ import com.google.firebase.analytics.FirebaseAnalytics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 import info.nightscout.androidaps.BuildConfig;
 import info.nightscout.androidaps.Constants;
 import info.nightscout.androidaps.MainApp;
@@ -20,6 +22,7 @@ import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.Source;
 import info.nightscout.androidaps.events.EventNewBasalProfile;
 import info.nightscout.androidaps.events.EventProfileNeedsUpdate;
+import info.nightscout.androidaps.events.EventProfileStoreChanged;
 import info.nightscout.androidaps.interfaces.ProfileInterface;
 import info.nightscout.androidaps.interfaces.TreatmentsInterface;
 import info.nightscout.androidaps.logging.L;
@@ -39,6 +42,24 @@ public class ProfileFunctions {
 
     private static ProfileFunctions profileFunctions = null;
 
+    // Profile resolved for time is reused for all times between the same profile switch boundaries
+    private static class CachedProfile {
+        final long[] boundaries;
+        final long from; // exclusive
+        final long to; // exclusive
+        final Profile profile;
+
+        CachedProfile(long[] boundaries, long from, long to, Profile profile) {
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.profile = profile;
+        }
+    }
+
+    private volatile CachedProfile cachedProfile = null;
+    private volatile int cacheGeneration = 0;
+
     public static ProfileFunctions getInstance() {
         if (profileFunctions == null)
             profileFunctions = new ProfileFunctions();
@@ -50,12 +71,18 @@ public class ProfileFunctions {
     }
 
     private ProfileFunctions() {
+        disposable.add(RxBus.INSTANCE
+                .toObservable(EventProfileStoreChanged.class)
+                .observeOn(Schedulers.io())
+                .subscribe(event -> invalidateCache(), FabricPrivacy::logException)
+        );
         disposable.add(RxBus.INSTANCE
                 .toObservable(EventProfileNeedsUpdate.class)
                 .observeOn(Schedulers.io())
                 .subscribe(event -> {
                     if (L.isEnabled(L.PROFILE))
                         log.debug("onProfileSwitch");
+                    invalidateCache();
                     ConfigBuilderPlugin.getPlugin().getCommandQueue().setProfile(getProfile(), new Callback() {
                         @Override
                         public void run() {
@@ -128,8 +155,36 @@ public class ProfileFunctions {
         return SP.getString(R.string.key_units, Constants.MGDL);
     }
 
+    public void invalidateCache() {
+        cacheGeneration++;
+        cachedProfile = null;
+    }
+
     @Nullable
     public Profile getProfile(long time) {
+        long[] boundaries = TreatmentsPlugin.getPlugin().getProfileSwitchBoundaries();
+        CachedProfile cached = cachedProfile;
+        if (cached != null && cached.boundaries == boundaries && cached.from < time && time < cached.to)
+            return cached.profile;
+
+        int generation = cacheGeneration;
+        Profile profile = resolveProfile(time);
+        if (profile != null && boundaries != null) {
+            int index = Arrays.binarySearch(boundaries, time);
+            // on boundary result may differ from both neighbour ranges, don't cache
+            if (index < 0) {
+                index = -index - 1;
+                long from = index > 0 ? boundaries[index - 1] : Long.MIN_VALUE;
+                long to = index < boundaries.length ? boundaries[index] : Long.MAX_VALUE;
+                if (generation == cacheGeneration)
+                    cachedProfile = new CachedProfile(boundaries, from, to, profile);
+            }
+        }
+        return profile;
+    }
+
+    @Nullable
+    private Profile resolveProfile(long time) {
         TreatmentsInterface activeTreatments = TreatmentsPlugin.getPlugin();
         ProfileInterface activeProfile = ConfigBuilderPlugin.getPlugin().getActiveProfileInterface();
 
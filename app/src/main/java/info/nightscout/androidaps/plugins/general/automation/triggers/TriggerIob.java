@@ -57,7 +57,7 @@ public class TriggerIob extends Trigger {
         Profile profile = ProfileFunctions.getInstance().getProfile();
         if (profile == null)
             return false;
-        IobTotal iob = IobCobCalculatorPlugin.getPlugin().calculateFromTreatmentsAndTempsSynchronized(DateUtil.now(), profile);
+        IobTotal iob = IobCobCalculatorPlugin.getPlugin().calculateFromTreatmentsAndTemps(DateUtil.now(), profile);
 
         if (lastRun > DateUtil.now() - T.mins(5).msecs())
             return false;
@@ -13,6 +13,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.plugins.general.food.FoodPlugin;
 import info.nightscout.androidaps.plugins.general.maintenance.activities.LogSettingActivity;
 import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.OKDialog;
 
 /**
@@ -50,6 +51,10 @@ public class MaintenanceFragment extends Fragment {
             ImportExportPrefs.importSharedPreferences(this);
         });
 
+        view.findViewById(R.id.loop_timings).setOnClickListener(view1 ->
+                OKDialog.show(getContext(), MainApp.gs(R.string.loop_timings), LoopTimings.report() + "\n" + MainApp.getDbHelper().getQueryTimingReport())
+        );
+
         view.findViewById(R.id.nav_logsettings).setOnClickListener(view1 -> {
             startActivity(new Intent(getActivity(), LogSettingActivity.class));
         });
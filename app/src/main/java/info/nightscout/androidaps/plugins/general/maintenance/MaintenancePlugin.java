@@ -29,6 +29,7 @@ import info.nightscout.androidaps.interfaces.PluginDescription;
 import info.nightscout.androidaps.interfaces.PluginType;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSSettingsStatus;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.SP;
 
 public class MaintenancePlugin extends PluginBase {
@@ -204,6 +205,12 @@ public class MaintenancePlugin extends PluginBase {
             }
         }
 
+        out.putNextEntry(new ZipEntry("LoopTimings.txt"));
+        out.write(LoopTimings.report().getBytes());
+
+        out.putNextEntry(new ZipEntry("QueryTimings.txt"));
+        out.write(MainApp.getDbHelper().getQueryTimingReport().getBytes());
+
         out.close();
     }
 
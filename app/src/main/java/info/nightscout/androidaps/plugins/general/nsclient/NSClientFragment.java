@@ -21,6 +21,7 @@ import info.nightscout.androidaps.plugins.bus.RxBus;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientNewLog;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientRestart;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientUpdateGUI;
+import info.nightscout.androidaps.plugins.general.nsclient.services.NSClientService;
 import info.nightscout.androidaps.utils.FabricPrivacy;
 import info.nightscout.androidaps.utils.OKDialog;
 import info.nightscout.androidaps.utils.SP;
@@ -147,7 +148,7 @@ public class NSClientFragment extends Fragment implements View.OnClickListener,
             logScrollview.fullScroll(ScrollView.FOCUS_DOWN);
         }
         urlTextView.setText(NSClientPlugin.getPlugin().url());
-        Spanned queuetext = Html.fromHtml(MainApp.gs(R.string.queue) + " <b>" + UploadQueue.size() + "</b>");
+        Spanned queuetext = Html.fromHtml(MainApp.gs(R.string.queue) + " <b>" + UploadQueue.size() + "</b> " + NSClientService.uploadWindow.status());
         queueTextView.setText(queuetext);
         statusTextView.setText(NSClientPlugin.getPlugin().status);
     }
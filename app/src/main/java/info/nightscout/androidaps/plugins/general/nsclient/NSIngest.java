@@ -0,0 +1,115 @@
+package info.nightscout.androidaps.plugins.general.nsclient;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.db.CareportalEvent;
+import info.nightscout.androidaps.events.EventNsTreatment;
+import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.plugins.bus.RxBus;
+import info.nightscout.androidaps.plugins.general.nsclient.data.NSSgv;
+import info.nightscout.androidaps.plugins.general.nsclient.data.NSTreatment;
+import info.nightscout.androidaps.plugins.general.overview.events.EventNewNotification;
+import info.nightscout.androidaps.plugins.general.overview.notifications.Notification;
+import info.nightscout.androidaps.plugins.pump.danaR.activities.DanaRNSHistorySync;
+import info.nightscout.androidaps.plugins.source.SourceNSClientPlugin;
+import info.nightscout.androidaps.utils.JsonHelper;
+import info.nightscout.androidaps.utils.SP;
+
+/**
+ * Stores treatments and sgvs received by NSClientService
+ * Records are parsed only once on socket and passed here in batches, every batch in one transaction
+ */
+public class NSIngest {
+    private static Logger log = LoggerFactory.getLogger(L.DATASERVICE);
+
+    public static boolean acceptNSData() {
+        return !SP.getBoolean(R.string.key_ns_upload_only, true);
+    }
+
+    public static void handleTreatments(List<NSTreatment> added, List<NSTreatment> updated, List<NSTreatment> removed) {
+        if (!acceptNSData()) return;
+        if (L.isEnabled(L.DATASERVICE))
+            log.debug("Treatments added: " + added.size() + " updated: " + updated.size() + " removed: " + removed.size());
+        MainApp.getDbHelper().runInTransaction(() -> {
+            for (NSTreatment treatment : removed)
+                handleRemovedTreatment(treatment.getData());
+            for (NSTreatment treatment : updated)
+                handleTreatment(treatment.getData(), EventNsTreatment.Companion.getUPDATE());
+            for (NSTreatment treatment : added)
+                handleTreatment(treatment.getData(), EventNsTreatment.Companion.getADD());
+        });
+    }
+
+    public static void handleSgvs(List<NSSgv> sgvs) {
+        SourceNSClientPlugin.getPlugin().handleNewSgvs(sgvs);
+    }
+
+    public static void handleRemovedTreatment(JSONObject json) {
+        // new DB model
+        EventNsTreatment evtTreatment = new EventNsTreatment(EventNsTreatment.Companion.getREMOVE(), json);
+        RxBus.INSTANCE.send(evtTreatment);
+        // old DB model
+        String _id = JsonHelper.safeGetString(json, "_id");
+        MainApp.getDbHelper().deleteTempTargetById(_id);
+        MainApp.getDbHelper().deleteTempBasalById(_id);
+        MainApp.getDbHelper().deleteExtendedBolusById(_id);
+        MainApp.getDbHelper().deleteCareportalEventById(_id);
+        MainApp.getDbHelper().deleteProfileSwitchById(_id);
+    }
+
+    public static void handleTreatment(JSONObject json, int mode) {
+        // new DB model
+        double insulin = JsonHelper.safeGetDouble(json, "insulin");
+        double carbs = JsonHelper.safeGetDouble(json, "carbs");
+        String eventType = JsonHelper.safeGetString(json, "eventType");
+        if (eventType == null) {
+            log.debug("Wrong treatment. Ignoring : " + json.toString());
+            return;
+        }
+        if (insulin > 0 || carbs > 0) {
+            EventNsTreatment evtTreatment = new EventNsTreatment(mode, json);
+            RxBus.INSTANCE.send(evtTreatment);
+        } else if (json.has(DanaRNSHistorySync.DANARSIGNATURE)) {
+            // old DB model
+            MainApp.getDbHelper().updateDanaRHistoryRecordId(json);
+        } else if (eventType.equals(CareportalEvent.TEMPORARYTARGET)) {
+            MainApp.getDbHelper().createTemptargetFromJsonIfNotExists(json);
+        } else if (eventType.equals(CareportalEvent.TEMPBASAL)) {
+            MainApp.getDbHelper().createTempBasalFromJsonIfNotExists(json);
+        } else if (eventType.equals(CareportalEvent.COMBOBOLUS)) {
+            MainApp.getDbHelper().createExtendedBolusFromJsonIfNotExists(json);
+        } else if (eventType.equals(CareportalEvent.PROFILESWITCH)) {
+            MainApp.getDbHelper().createProfileSwitchFromJsonIfNotExists(json);
+        } else if (eventType.equals(CareportalEvent.SITECHANGE) ||
+                eventType.equals(CareportalEvent.INSULINCHANGE) ||
+                eventType.equals(CareportalEvent.SENSORCHANGE) ||
+                eventType.equals(CareportalEvent.BGCHECK) ||
+                eventType.equals(CareportalEvent.NOTE) ||
+                eventType.equals(CareportalEvent.NONE) ||
+                eventType.equals(CareportalEvent.ANNOUNCEMENT) ||
+                eventType.equals(CareportalEvent.QUESTION) ||
+                eventType.equals(CareportalEvent.EXERCISE) ||
+                eventType.equals(CareportalEvent.OPENAPSOFFLINE) ||
+                eventType.equals(CareportalEvent.PUMPBATTERYCHANGE)) {
+            MainApp.getDbHelper().createCareportalEventFromJsonIfNotExists(json);
+        }
+
+        if (eventType.equals(CareportalEvent.ANNOUNCEMENT)) {
+            long date = JsonHelper.safeGetLong(json, "mills");
+            long now = System.currentTimeMillis();
+            String enteredBy = JsonHelper.safeGetString(json, "enteredBy", "");
+            String notes = JsonHelper.safeGetString(json, "notes", "");
+            if (date > now - 15 * 60 * 1000L && !notes.isEmpty()
+                    && !enteredBy.equals(SP.getString("careportal_enteredby", "AndroidAPS"))) {
+                Notification announcement = new Notification(Notification.NSANNOUNCEMENT, notes, Notification.ANNOUNCEMENT, 60);
+                RxBus.INSTANCE.send(new EventNewNotification(announcement));
+            }
+        }
+    }
+}
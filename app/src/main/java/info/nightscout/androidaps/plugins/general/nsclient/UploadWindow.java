@@ -0,0 +1,146 @@
+package info.nightscout.androidaps.plugins.general.nsclient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.db.DbRequest;
+import info.nightscout.androidaps.utils.DateUtil;
+import info.nightscout.androidaps.utils.SP;
+import info.nightscout.androidaps.utils.T;
+
+/**
+ * DbRequests sent to NS and waiting for ack
+ * New requests are sent only while number of requests in flight is below window size.
+ * Acked requests are collected here and deleted from UploadQueue in one batch.
+ * Request not acked in ACK_TIMEOUT is considered lost and sent again.
+ */
+public class UploadWindow {
+    private static final long ACK_TIMEOUT = T.mins(1).msecs();
+    private static final long RATE_PERIOD = T.mins(1).msecs();
+    private static final int DEFAULT_SIZE = 30;
+
+    // key -> time of sending
+    private final Map<String, Long> inFlight = new HashMap<>();
+    private final List<String> ackedNsClientIds = new ArrayList<>();
+    private final List<String[]> ackedMongoIds = new ArrayList<>(); // action, _id
+    private final Set<String> ackedKeys = new HashSet<>(); // acked but still in UploadQueue
+    private final LinkedList<Long> ackTimes = new LinkedList<>();
+
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+
+    private long timeouts = 0;
+
+    public static String key(DbRequest dbr) {
+        return dbr.action.equals("dbAdd") ? dbr.nsClientID : dbr.action + dbr._id;
+    }
+
+    public static int size() {
+        return Math.max(1, SP.getInt(R.string.key_ns_upload_window, DEFAULT_SIZE));
+    }
+
+    public synchronized boolean isInFlight(String key) {
+        return inFlight.containsKey(key) || ackedKeys.contains(key);
+    }
+
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    public synchronized boolean isFull() {
+        return inFlight.size() >= size();
+    }
+
+    public synchronized void sent(String key) {
+        inFlight.put(key, DateUtil.now());
+    }
+
+    public synchronized void addAcked(String nsClientID) {
+        inFlight.remove(nsClientID);
+        ackedKeys.add(nsClientID);
+        ackedNsClientIds.add(nsClientID);
+        countAck();
+    }
+
+    public synchronized void updateAcked(String action, String _id) {
+        inFlight.remove(action + _id);
+        ackedKeys.add(action + _id);
+        ackedMongoIds.add(new String[]{action, _id});
+        countAck();
+    }
+
+    private void countAck() {
+        long now = DateUtil.now();
+        ackTimes.add(now);
+        while (!ackTimes.isEmpty() && ackTimes.getFirst() < now - RATE_PERIOD)
+            ackTimes.removeFirst();
+    }
+
+    // acks come in bursts, delete acked requests and refill window once per burst
+    // acked requests are deleted from UploadQueue before window is refilled, so refill doesn't see them
+    public void scheduleRefill(Executor executor, Runnable sendWindow) {
+        if (refillScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                refillScheduled.set(false);
+                deleteAcked();
+                sendWindow.run();
+            });
+        }
+    }
+
+    // remove requests acked since last call from UploadQueue
+    public void deleteAcked() {
+        final List<String> nsClientIds;
+        final List<String[]> mongoIds;
+        synchronized (this) {
+            if (ackedNsClientIds.isEmpty() && ackedMongoIds.isEmpty()) return;
+            nsClientIds = new ArrayList<>(ackedNsClientIds);
+            mongoIds = new ArrayList<>(ackedMongoIds);
+            ackedNsClientIds.clear();
+            ackedMongoIds.clear();
+        }
+        MainApp.getDbHelper().runInTransaction(() -> {
+            MainApp.getDbHelper().deleteDbRequests(nsClientIds);
+            for (String[] mongoId : mongoIds)
+                MainApp.getDbHelper().deleteDbRequestbyMongoId(mongoId[0], mongoId[1]);
+        });
+        synchronized (this) {
+            ackedKeys.removeAll(nsClientIds);
+            for (String[] mongoId : mongoIds)
+                ackedKeys.remove(mongoId[0] + mongoId[1]);
+        }
+    }
+
+    // acks for requests sent over previous connection will never come
+    public synchronized void clearInFlight() {
+        inFlight.clear();
+    }
+
+    public synchronized String status() {
+        long now = DateUtil.now();
+        while (!ackTimes.isEmpty() && ackTimes.getFirst() < now - RATE_PERIOD)
+            ackTimes.removeFirst();
+        return MainApp.gs(R.string.ns_upload_window_status, inFlight.size(), size(), ackTimes.size(), timeouts);
+    }
+
+    // drop timed out requests so they are sent again
+    public synchronized void expire() {
+        long now = DateUtil.now();
+        Iterator<Map.Entry<String, Long>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() < now - ACK_TIMEOUT) {
+                iterator.remove();
+                timeouts++;
+            }
+        }
+    }
+}
@@ -46,21 +46,11 @@ public class BroadcastTreatment {
         }
     }
 
+    // treatments are stored directly by NSIngest, broadcast only to other apps
     public static void handleNewTreatment(JSONArray treatments, boolean isDelta) {
 
-        List<JSONArray> splitted = splitArray(treatments);
-        for (JSONArray part : splitted) {
-            Bundle bundle = new Bundle();
-            bundle.putString("treatments", part.toString());
-            bundle.putBoolean("delta", isDelta);
-            Intent intent = new Intent(Intents.ACTION_NEW_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-        }
-
         if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, false)) {
-            splitted = splitArray(treatments);
+            List<JSONArray> splitted = splitArray(treatments);
             for (JSONArray part : splitted) {
                 Bundle bundle = new Bundle();
                 bundle.putString("treatments", part.toString());
@@ -75,19 +65,8 @@ public class BroadcastTreatment {
 
     public static void handleChangedTreatment(JSONArray treatments, boolean isDelta) {
 
-        List<JSONArray> splitted = splitArray(treatments);
-        for (JSONArray part : splitted) {
-            Bundle bundle = new Bundle();
-            bundle.putString("treatments", part.toString());
-            bundle.putBoolean("delta", isDelta);
-            Intent intent = new Intent(Intents.ACTION_CHANGED_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-        }
-
         if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, false)) {
-            splitted = splitArray(treatments);
+            List<JSONArray> splitted = splitArray(treatments);
             for (JSONArray part : splitted) {
                 Bundle bundle = new Bundle();
                 bundle.putString("treatments", part.toString());
@@ -102,20 +81,11 @@ public class BroadcastTreatment {
 
     public static void handleRemovedTreatment(JSONArray treatments, boolean isDelta) {
 
-        Bundle bundle = new Bundle();
-        bundle.putString("treatments", treatments.toString());
-        bundle.putBoolean("delta", isDelta);
-        Intent intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-
-
         if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, false)) {
-            bundle = new Bundle();
+            Bundle bundle = new Bundle();
             bundle.putString("treatments", treatments.toString());
             bundle.putBoolean("delta", isDelta);
-            intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
+            Intent intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
             intent.putExtras(bundle);
             intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
             MainApp.instance().getApplicationContext().sendBroadcast(intent);
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.MainApp;
@@ -36,7 +37,9 @@ import info.nightscout.androidaps.interfaces.PluginType;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.bus.RxBus;
 import info.nightscout.androidaps.plugins.general.nsclient.NSClientPlugin;
+import info.nightscout.androidaps.plugins.general.nsclient.NSIngest;
 import info.nightscout.androidaps.plugins.general.nsclient.UploadQueue;
+import info.nightscout.androidaps.plugins.general.nsclient.UploadWindow;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAddAck;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAuthAck;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSUpdateAck;
@@ -101,13 +104,12 @@ public class NSClientService extends Service {
     private String nsDevice = "";
     private Integer nsHours = 48;
 
-    public long lastResendTime = 0;
-
     public long latestDateInReceivedData = 0;
 
     private String nsAPIhashCode = "";
 
     public static UploadQueue uploadQueue = new UploadQueue();
+    public static UploadWindow uploadWindow = new UploadWindow();
 
     private ArrayList<Long> reconnections = new ArrayList<>();
     private int WATCHDOG_INTERVAL_MINUTES = 2;
@@ -199,7 +201,8 @@ public class NSClientService extends Service {
 
     public void processAddAck(NSAddAck ack) {
         if (ack.nsClientID != null) {
-            uploadQueue.removeID(ack.json);
+            uploadWindow.addAcked(ack.nsClientID);
+            scheduleRefill();
             RxBus.INSTANCE.send(new EventNSClientNewLog("DBADD", "Acked " + ack.nsClientID));
         } else {
             RxBus.INSTANCE.send(new EventNSClientNewLog("ERROR", "DBADD Unknown response"));
@@ -208,7 +211,10 @@ public class NSClientService extends Service {
 
     public void processUpdateAck(NSUpdateAck ack) {
         if (ack.result) {
-            uploadQueue.removeID(ack.action, ack._id);
+            if (ack._id != null && !ack._id.equals("")) {
+                uploadWindow.updateAcked(ack.action, ack._id);
+                scheduleRefill();
+            }
             RxBus.INSTANCE.send(new EventNSClientNewLog("DBUPDATE/DBREMOVE", "Acked " + ack._id));
         } else {
             RxBus.INSTANCE.send(new EventNSClientNewLog("ERROR", "DBUPDATE/DBREMOVE Unknown response"));
@@ -305,6 +311,7 @@ public class NSClientService extends Service {
         @Override
         public void call(Object... args) {
             connectCounter++;
+            uploadWindow.clearInFlight();
             String socketId = mSocket != null ? mSocket.id() : "NULL";
             RxBus.INSTANCE.send(new EventNSClientNewLog("NSCLIENT", "connect #" + connectCounter + " event. ID: " + socketId));
             if (mSocket != null)
@@ -598,6 +605,9 @@ public class NSClientService extends Service {
                                 JSONArray removedTreatments = new JSONArray();
                                 JSONArray updatedTreatments = new JSONArray();
                                 JSONArray addedTreatments = new JSONArray();
+                                List<NSTreatment> removed = new ArrayList<>();
+                                List<NSTreatment> updated = new ArrayList<>();
+                                List<NSTreatment> added = new ArrayList<>();
                                 if (treatments.length() > 0)
                                     RxBus.INSTANCE.send(new EventNSClientNewLog("DATA", "received " + treatments.length() + " treatments"));
                                 for (Integer index = 0; index < treatments.length(); index++) {
@@ -612,14 +622,21 @@ public class NSClientService extends Service {
                                             latestDateInReceivedData = treatment.getMills();
 
                                     if (treatment.getAction() == null) {
+                                        added.add(treatment);
                                         addedTreatments.put(jsonTreatment);
                                     } else if (treatment.getAction().equals("update")) {
+                                        updated.add(treatment);
                                         updatedTreatments.put(jsonTreatment);
                                     } else if (treatment.getAction().equals("remove")) {
-                                        if (treatment.getMills() != null && treatment.getMills() > System.currentTimeMillis() - 24 * 60 * 60 * 1000L) // handle 1 day old deletions only
+                                        if (treatment.getMills() != null && treatment.getMills() > System.currentTimeMillis() - 24 * 60 * 60 * 1000L) { // handle 1 day old deletions only
+                                            removed.add(treatment);
                                             removedTreatments.put(jsonTreatment);
+                                        }
                                     }
                                 }
+                                if (treatments.length() > 0)
+                                    NSIngest.handleTreatments(added, updated, removed);
+                                // broadcast to other apps if enabled
                                 if (removedTreatments.length() > 0) {
                                     BroadcastTreatment.handleRemovedTreatment(removedTreatments, isDelta);
                                 }
@@ -699,12 +716,14 @@ public class NSClientService extends Service {
                             }
                             if (data.has("sgvs")) {
                                 JSONArray sgvs = data.getJSONArray("sgvs");
+                                List<NSSgv> sgvList = new ArrayList<>();
                                 if (sgvs.length() > 0)
                                     RxBus.INSTANCE.send(new EventNSClientNewLog("DATA", "received " + sgvs.length() + " sgvs"));
                                 for (Integer index = 0; index < sgvs.length(); index++) {
                                     JSONObject jsonSgv = sgvs.getJSONObject(index);
                                     // RxBus.INSTANCE.send(new EventNSClientNewLog("DATA", "svg " + sgvs.getJSONObject(index).toString());
                                     NSSgv sgv = new NSSgv(jsonSgv);
+                                    sgvList.add(sgv);
                                     // Handle new sgv here
                                     // remove from upload queue if Ack is failing
                                     UploadQueue.removeID(jsonSgv);
@@ -720,6 +739,9 @@ public class NSClientService extends Service {
                                 if (Notification.isAlarmForStaleData() && lessThan15MinAgo) {
                                     RxBus.INSTANCE.send(new EventDismissNotification(Notification.NSALARM));
                                 }
+                                if (sgvList.size() > 0)
+                                    NSIngest.handleSgvs(sgvList);
+                                // broadcast to other apps if enabled
                                 BroadcastSgvs.handleNewSgv(sgvs, MainApp.instance().getApplicationContext(), isDelta);
                             }
                             RxBus.INSTANCE.send(new EventNSClientNewLog("LAST", DateUtil.dateAndTimeString(latestDateInReceivedData)));
@@ -802,52 +824,56 @@ public class NSClientService extends Service {
 
         if (!isConnected || !hasWriteAuth) return;
 
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (mSocket == null || !mSocket.connected()) return;
+        handler.post(() -> sendWindow(reason));
+    }
 
-                if (lastResendTime > System.currentTimeMillis() - 10 * 1000L) {
-                    if (L.isEnabled(L.NSCLIENT))
-                        log.debug("Skipping resend by lastResendTime: " + ((System.currentTimeMillis() - lastResendTime) / 1000L) + " sec");
-                    return;
-                }
-                lastResendTime = System.currentTimeMillis();
+    private void scheduleRefill() {
+        if (handler != null)
+            uploadWindow.scheduleRefill(handler::post, () -> sendWindow("ack received"));
+    }
 
-                RxBus.INSTANCE.send(new EventNSClientNewLog("QUEUE", "Resend started: " + reason));
+    // send queued requests not in flight until window is full, called on handler thread only
+    private void sendWindow(String reason) {
+        if (mSocket == null || !mSocket.connected() || !hasWriteAuth) return;
 
-                CloseableIterator<DbRequest> iterator = null;
-                int maxcount = 30;
-                try {
-                    iterator = MainApp.getDbHelper().getDbRequestInterator();
-                    try {
-                        while (iterator.hasNext() && maxcount > 0) {
-                            DbRequest dbr = iterator.next();
-                            if (dbr.action.equals("dbAdd")) {
-                                NSAddAck addAck = new NSAddAck();
-                                dbAdd(dbr, addAck);
-                            } else if (dbr.action.equals("dbRemove")) {
-                                NSUpdateAck removeAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbRemove(dbr, removeAck);
-                            } else if (dbr.action.equals("dbUpdate")) {
-                                NSUpdateAck updateAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbUpdate(dbr, updateAck);
-                            } else if (dbr.action.equals("dbUpdateUnset")) {
-                                NSUpdateAck updateUnsetAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbUpdateUnset(dbr, updateUnsetAck);
-                            }
-                            maxcount--;
-                        }
-                    } finally {
-                        iterator.close();
+        uploadWindow.expire();
+        if (uploadWindow.isFull()) return;
+
+        int count = 0;
+        CloseableIterator<DbRequest> iterator = null;
+        try {
+            iterator = MainApp.getDbHelper().getDbRequestInterator();
+            try {
+                while (iterator.hasNext() && !uploadWindow.isFull()) {
+                    DbRequest dbr = iterator.next();
+                    String key = UploadWindow.key(dbr);
+                    if (uploadWindow.isInFlight(key))
+                        continue;
+                    uploadWindow.sent(key);
+                    if (dbr.action.equals("dbAdd")) {
+                        NSAddAck addAck = new NSAddAck();
+                        dbAdd(dbr, addAck);
+                    } else if (dbr.action.equals("dbRemove")) {
+                        NSUpdateAck removeAck = new NSUpdateAck(dbr.action, dbr._id);
+                        dbRemove(dbr, removeAck);
+                    } else if (dbr.action.equals("dbUpdate")) {
+                        NSUpdateAck updateAck = new NSUpdateAck(dbr.action, dbr._id);
+                        dbUpdate(dbr, updateAck);
+                    } else if (dbr.action.equals("dbUpdateUnset")) {
+                        NSUpdateAck updateUnsetAck = new NSUpdateAck(dbr.action, dbr._id);
+                        dbUpdateUnset(dbr, updateUnsetAck);
                     }
-                } catch (SQLException e) {
-                    log.error("Unhandled exception", e);
+                    count++;
                 }
-
-                RxBus.INSTANCE.send(new EventNSClientNewLog("QUEUE", "Resend ended: " + reason));
+            } finally {
+                iterator.close();
             }
-        });
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+
+        if (count > 0)
+            RxBus.INSTANCE.send(new EventNSClientNewLog("QUEUE", "Sent " + count + " (" + reason + ") " + uploadWindow.status()));
     }
 
     public void restart() {
@@ -41,10 +41,12 @@ import org.slf4j.LoggerFactory;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.Constants;
@@ -196,6 +198,9 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
 
     private static final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
     private static ScheduledFuture<?> scheduledUpdate = null;
+    // graphs are prepared on graphWorker, only the newest waiting preparation is executed
+    private static final ExecutorService graphWorker = Executors.newSingleThreadExecutor();
+    private static final AtomicReference<Runnable> pendingGraphUpdate = new AtomicReference<>();
 
     public OverviewFragment() {
         super();
@@ -432,7 +437,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
                         FabricPrivacy::logException
                 ));
         disposable.add(RxBus.INSTANCE
-                .toObservable(EventIobCalculationProgress.class)
+                .toObservable(EventIobCalculationProgress.class, 250, TimeUnit.MILLISECONDS)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(event -> {
                             if (iobCalculationProgressView != null)
@@ -985,6 +990,14 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
         }
     }
 
+    private static void scheduleGraphUpdate(Runnable prepare) {
+        pendingGraphUpdate.set(prepare);
+        graphWorker.execute(() -> {
+            Runnable newest = pendingGraphUpdate.getAndSet(null);
+            if (newest != null) newest.run();
+        });
+    }
+
     public void scheduleUpdateGUI(final String from) {
         class UpdateRunnable implements Runnable {
             public void run() {
@@ -1369,7 +1382,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
 
         // ****** GRAPH *******
 
-        new Thread(() -> {
+        scheduleGraphUpdate(() -> {
             // allign to hours
             Calendar calendar = Calendar.getInstance();
             calendar.setTimeInMillis(System.currentTimeMillis());
@@ -1489,7 +1502,8 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
             secondGraphData.formatAxis(fromTime, endTime);
             secondGraphData.addNowLine(now);
 
-            // do GUI update
+            // do GUI update, both graphs are swapped in one step
+            // finished graphs are drawn even if newer request is waiting, otherwise steady updates would never show anything
             FragmentActivity activity = getActivity();
             if (activity != null) {
                 activity.runOnUiThread(() -> {
@@ -1510,7 +1524,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
                         Profiler.log(log, from + " - onDataChanged", updateGUIStart);
                 });
             }
-        }).start();
+        });
 
         if (L.isEnabled(L.OVERVIEW))
             Profiler.log(log, from, updateGUIStart);
@@ -28,6 +28,8 @@ import info.nightscout.androidaps.db.CareportalEvent;
 import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.TempTarget;
+import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.interfaces.PumpInterface;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.aps.loop.APSResult;
 import info.nightscout.androidaps.plugins.aps.loop.LoopPlugin;
@@ -44,8 +46,8 @@ import info.nightscout.androidaps.plugins.general.overview.graphExtensions.Scale
 import info.nightscout.androidaps.plugins.general.overview.graphExtensions.TimeAsXAxisLabelFormatter;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensData;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult;
-import info.nightscout.androidaps.plugins.iob.iobCobCalculator.BasalData;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobSnapshot;
 import info.nightscout.androidaps.plugins.treatments.Treatment;
 import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.utils.DecimalFormatter;
@@ -65,6 +67,10 @@ public class GraphData {
     private List<BgReading> bgReadingsArray;
     private String units;
     private List<Series> series = new ArrayList<>();
+    // applied to graph in performUpdate, preparation doesn't touch the view
+    private long minX = 0;
+    private long maxX = 0;
+    private int numOfVertLines = 0;
 
     private IobCobCalculatorPlugin iobCobCalculatorPlugin;
 
@@ -113,7 +119,7 @@ public class GraphData {
         maxY = maxBgValue;
         minY = 0;
         // set manual y bounds to have nice steps
-        graph.getGridLabelRenderer().setNumVerticalLabels(numOfVertLines);
+        this.numOfVertLines = numOfVertLines;
 
         addSeries(new PointsWithLabelGraphSeries<>(bg));
     }
@@ -151,16 +157,16 @@ public class GraphData {
         double lastAbsoluteLineBasal = -1;
         double lastBaseBasal = 0;
         double lastTempBasal = 0;
-        for (long time = fromTime; time < toTime; time += 60 * 1000L) {
+        for (long time : basalTimeline(fromTime, toTime)) {
             Profile profile = ProfileFunctions.getInstance().getProfile(time);
             if (profile == null) continue;
-            BasalData basalData = iobCobCalculatorPlugin.getBasalData(profile, time);
-            double baseBasalValue = basalData.basal;
+            TemporaryBasal tb = TreatmentsPlugin.getPlugin().getTempBasalFromHistory(time);
+            double baseBasalValue = profile.getBasal(time);
             double absoluteLineValue = baseBasalValue;
             double tempBasalValue = 0;
             double basal = 0d;
-            if (basalData.isTempBasalRunning) {
-                absoluteLineValue = tempBasalValue = basalData.tempBasalAbsolute;
+            if (tb != null) {
+                absoluteLineValue = tempBasalValue = tb.tempBasalConvertedToAbsolute(time, profile);
                 if (tempBasalValue != lastTempBasal) {
                     tempBasalArray.add(new ScaledDataPoint(time, lastTempBasal, basalScale));
                     tempBasalArray.add(new ScaledDataPoint(time, basal = tempBasalValue, basalScale));
@@ -243,6 +249,25 @@ public class GraphData {
         addSeries(absoluteBasalsLineSeries);
     }
 
+    // times where basal or temp basal can change: profile switches, basal schedule and temp basals
+    private long[] basalTimeline(long fromTime, long toTime) {
+        Timeline timeline = new Timeline(fromTime, toTime);
+        long[] profileSwitches = TreatmentsPlugin.getPlugin().getProfileSwitchBoundaries();
+        timeline.add(profileSwitches);
+        Profile profile = ProfileFunctions.getInstance().getProfile(fromTime);
+        if (profile != null) timeline.addSchedule(profile.getBasalValues());
+        for (long time : profileSwitches) {
+            if (time <= fromTime || time >= toTime) continue;
+            profile = ProfileFunctions.getInstance().getProfile(time);
+            if (profile != null) timeline.addSchedule(profile.getBasalValues());
+        }
+        timeline.addIntervals(TreatmentsPlugin.getPlugin().getTemporaryBasalsFromHistory().getList());
+        PumpInterface pump = ConfigBuilderPlugin.getPlugin().getActivePump();
+        if (pump != null && pump.isFakingTempsByExtendedBoluses())
+            timeline.addIntervals(TreatmentsPlugin.getPlugin().getExtendedBolusesFromHistory().getList());
+        return timeline.build();
+    }
+
     public void addTargetLine(long fromTime, long toTime, Profile profile) {
         LineGraphSeries<DataPoint> targetsSeries;
 
@@ -260,7 +285,10 @@ public class GraphData {
             }
         }
 
-        for (long time = fromTime; time < toTime; time += 5 * 60 * 1000L) {
+        Timeline timeline = new Timeline(fromTime, toTime);
+        timeline.addIntervals(TreatmentsPlugin.getPlugin().getTempTargetsFromHistory().getList());
+        timeline.addSchedule(profile.getSingleTargetsMgdl());
+        for (long time : timeline.build()) {
             TempTarget tt = TreatmentsPlugin.getPlugin().getTempTargetFromHistory(time);
             double value;
             if (tt == null) {
@@ -364,7 +392,7 @@ public class GraphData {
             Profile profile = ProfileFunctions.getInstance().getProfile(time);
             double act = 0d;
             if (profile == null) continue;
-            total = iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile);
+            total = iobCobCalculatorPlugin.calculateFromTreatmentsAndTemps(time, profile);
             act = total.activity;
 
             if (time <= now)
@@ -416,7 +444,7 @@ public class GraphData {
             Profile profile = ProfileFunctions.getInstance().getProfile(time);
             double iob = 0d;
             if (profile != null)
-                iob = iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile).iob;
+                iob = iobCobCalculatorPlugin.calculateFromTreatmentsAndTemps(time, profile).iob;
             if (Math.abs(lastIob - iob) > 0.02) {
                 if (Math.abs(lastIob - iob) > 0.2)
                     iobArray.add(new ScaledDataPoint(time, lastIob, iobScale));
@@ -436,7 +464,7 @@ public class GraphData {
 
         if (showPrediction) {
             AutosensResult lastAutosensResult;
-            AutosensData autosensData = IobCobCalculatorPlugin.getPlugin().getLastAutosensDataSynchronized("GraphData");
+            AutosensData autosensData = IobCobCalculatorPlugin.getPlugin().getLastAutosensData("GraphData");
             if (autosensData == null)
                 lastAutosensResult = new AutosensResult();
             else
@@ -489,8 +517,9 @@ public class GraphData {
         int lastCob = 0;
         Scale cobScale = new Scale();
 
+        IobCobSnapshot snapshot = iobCobCalculatorPlugin.getSnapshot();
         for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = iobCobCalculatorPlugin.getAutosensData(time);
+            AutosensData autosensData = snapshot.getAutosensData(time);
             if (autosensData != null) {
                 int cob = (int) autosensData.cob;
                 if (cob != lastCob) {
@@ -547,8 +576,9 @@ public class GraphData {
         Double maxDevValueFound = 0d;
         Scale devScale = new Scale();
 
+        IobCobSnapshot snapshot = iobCobCalculatorPlugin.getSnapshot();
         for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = iobCobCalculatorPlugin.getAutosensData(time);
+            AutosensData autosensData = snapshot.getAutosensData(time);
             if (autosensData != null) {
                 int color = MainApp.gc(R.color.deviationblack); // "="
                 if (autosensData.type.equals("") || autosensData.type.equals("non-meal")) {
@@ -597,8 +627,9 @@ public class GraphData {
         Double minRatioValueFound = Double.MAX_VALUE;
         Scale ratioScale = new Scale();
 
+        IobCobSnapshot snapshot = iobCobCalculatorPlugin.getSnapshot();
         for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = iobCobCalculatorPlugin.getAutosensData(time);
+            AutosensData autosensData = snapshot.getAutosensData(time);
             if (autosensData != null) {
                 ratioArray.add(new ScaledDataPoint(time, autosensData.autosensResult.ratio - 1, ratioScale));
                 maxRatioValueFound = Math.max(maxRatioValueFound, autosensData.autosensResult.ratio - 1);
@@ -634,8 +665,9 @@ public class GraphData {
         Scale dsMaxScale = new Scale();
         Scale dsMinScale = new Scale();
 
+        IobCobSnapshot snapshot = iobCobCalculatorPlugin.getSnapshot();
         for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = iobCobCalculatorPlugin.getAutosensData(time);
+            AutosensData autosensData = snapshot.getAutosensData(time);
             if (autosensData != null) {
                 dsMaxArray.add(new ScaledDataPoint(time, autosensData.slopeFromMaxDeviation, dsMaxScale));
                 dsMinArray.add(new ScaledDataPoint(time, autosensData.slopeFromMinDeviation, dsMinScale));
@@ -691,18 +723,26 @@ public class GraphData {
     }
 
     public void formatAxis(long fromTime, long endTime) {
-        graph.getViewport().setMaxX(endTime);
-        graph.getViewport().setMinX(fromTime);
-        graph.getViewport().setXAxisBoundsManual(true);
-        graph.getGridLabelRenderer().setLabelFormatter(new TimeAsXAxisLabelFormatter("HH"));
-        graph.getGridLabelRenderer().setNumHorizontalLabels(7); // only 7 because of the space
+        minX = fromTime;
+        maxX = endTime;
     }
 
     private void addSeries(Series s) {
         series.add(s);
     }
 
+    // must be called on UI thread, all series are already prepared
     public void performUpdate() {
+        if (maxX != 0) {
+            graph.getViewport().setMaxX(maxX);
+            graph.getViewport().setMinX(minX);
+            graph.getViewport().setXAxisBoundsManual(true);
+            graph.getGridLabelRenderer().setLabelFormatter(new TimeAsXAxisLabelFormatter("HH"));
+            graph.getGridLabelRenderer().setNumHorizontalLabels(7); // only 7 because of the space
+        }
+        if (numOfVertLines != 0)
+            graph.getGridLabelRenderer().setNumVerticalLabels(numOfVertLines);
+
         // clear old data
         graph.getSeries().clear();
 
@@ -0,0 +1,68 @@
+package info.nightscout.androidaps.plugins.general.overview.graphData;
+
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.interfaces.Interval;
+import info.nightscout.androidaps.utils.MidnightTime;
+import info.nightscout.androidaps.utils.T;
+
+/**
+ * Sorted unique times within [from, to) where a step function like basal or target can change.
+ * Values are evaluated only at these times and are constant until next one,
+ * so graph doesn't need to be sampled every minute.
+ */
+class Timeline {
+    private final long from;
+    private final long to;
+    private long[] times = new long[64];
+    private int size = 0;
+
+    Timeline(long from, long to) {
+        this.from = from;
+        this.to = to;
+        add(from);
+    }
+
+    void add(long time) {
+        if (time < from || time >= to) return;
+        if (size == times.length)
+            times = Arrays.copyOf(times, size * 2);
+        times[size++] = time;
+    }
+
+    void add(long[] sortedTimes) {
+        int index = Arrays.binarySearch(sortedTimes, from);
+        if (index < 0) index = -index - 1;
+        for (; index < sortedTimes.length && sortedTimes[index] < to; index++)
+            add(sortedTimes[index]);
+    }
+
+    void addIntervals(List<? extends Interval> intervals) {
+        for (Interval interval : intervals) {
+            if (interval.end() < from || interval.start() >= to) continue;
+            add(interval.start());
+            add(interval.end());
+        }
+    }
+
+    // segment starts of daily schedule on every day of range
+    void addSchedule(Profile.ProfileValue[] values) {
+        for (long midnight = MidnightTime.calc(from); midnight < to; midnight = MidnightTime.calc(midnight + T.hours(25).msecs())) {
+            add(midnight);
+            for (Profile.ProfileValue value : values)
+                add(midnight + T.secs(value.timeAsSeconds).msecs());
+        }
+    }
+
+    long[] build() {
+        long[] result = Arrays.copyOf(times, size);
+        Arrays.sort(result);
+        int unique = 0;
+        for (long time : result)
+            if (unique == 0 || result[unique - 1] != time)
+                result[unique++] = time;
+        return Arrays.copyOf(result, unique);
+    }
+}
@@ -14,9 +14,7 @@ import info.nightscout.androidaps.utils.DateUtil
 import info.nightscout.androidaps.utils.OKDialog
 import info.nightscout.androidaps.utils.SP
 import info.nightscout.androidaps.utils.T
-import okhttp3.MediaType.Companion.toMediaTypeOrNull
 import okhttp3.OkHttpClient
-import okhttp3.RequestBody.Companion.toRequestBody
 import okhttp3.logging.HttpLoggingInterceptor
 import org.slf4j.LoggerFactory
 import retrofit2.Retrofit
@@ -189,7 +187,7 @@ object TidepoolUploader {
                     releaseWakeLock()
                 }
 
-                chunk.length == 2 -> {
+                chunk.isEmpty() -> {
                     if (L.isEnabled(L.TIDEPOOL)) log.debug("Empty dataset - marking as succeeded")
                     RxBus.send(EventTidepoolStatus(("No data to upload")))
                     releaseWakeLock()
@@ -197,7 +195,7 @@ object TidepoolUploader {
                 }
 
                 else -> {
-                    val body = chunk.toRequestBody("application/json".toMediaTypeOrNull())
+                    val body = UploadRequestBody(chunk)
 
                     RxBus.send(EventTidepoolStatus(("Uploading")))
                     if (session.service != null && session.token != null && session.datasetReply != null) {
@@ -2,6 +2,8 @@ package info.nightscout.androidaps.plugins.general.tidepool.comm
 
 import info.nightscout.androidaps.MainApp
 import info.nightscout.androidaps.R
+import info.nightscout.androidaps.data.Intervals
+import info.nightscout.androidaps.db.TemporaryBasal
 import info.nightscout.androidaps.logging.L
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.general.tidepool.elements.*
@@ -17,50 +19,68 @@ import java.util.*
 object UploadChunk {
 
     private val MAX_UPLOAD_SIZE = T.days(7).msecs() // don't change this
+    private val PAGE_SIZE = T.hours(6).msecs()
+    private const val DEFAULT_LIMIT = 1000
 
     private val log = LoggerFactory.getLogger(L.TIDEPOOL)
 
-    fun getNext(session: Session?): String? {
+    // Records are loaded from db page by page until limit is reached
+    // session.end is set to the end of the last loaded page
+    // limit is soft, last page is always loaded whole, so upload may exceed it by one page of records
+    fun getNext(session: Session?): List<BaseElement>? {
         if (session == null)
             return null
 
         session.start = TidepoolUploader.getLastEnd()
-        session.end = Math.min(session.start + MAX_UPLOAD_SIZE, DateUtil.now())
+        val maxEnd = Math.min(session.start + MAX_UPLOAD_SIZE, DateUtil.now())
+        val limit = SP.getInt(R.string.key_tidepool_upload_limit, DEFAULT_LIMIT)
 
-        val result = get(session.start, session.end)
-        if (result.length < 3) {
-            if (L.isEnabled(L.TIDEPOOL)) log.debug("No records in this time period, setting start to best end time")
-            TidepoolUploader.setLastEnd(Math.max(session.end, getOldestRecordTimeStamp()))
+        val records = LinkedList<BaseElement>()
+        val tbrs = if (SP.getBoolean(R.string.key_tidepool_upload_tbr, true)) getTemporaryBasals() else null
+        session.end = session.start
+        while (session.end < maxEnd && records.size < limit) {
+            val pageEnd = Math.min(session.end + PAGE_SIZE, maxEnd)
+            records.addAll(get(session.end, pageEnd, tbrs))
+            session.end = pageEnd
         }
-        return result
+
+        if (records.isEmpty()) {
+            if (L.isEnabled(L.TIDEPOOL)) log.debug("No records in this time period, setting start to best end time")
+            TidepoolUploader.setLastEnd(Math.max(maxEnd, getOldestRecordTimeStamp()))
+        } else
+            RxBus.send(EventTidepoolStatus("${records.size} records selected for upload"))
+        return records
     }
 
-    operator fun get(start: Long, end: Long): String {
+    // records from start (inclusive) to end (exclusive), record on page boundary belongs to next page only
+    fun get(start: Long, end: Long, tbrs: Intervals<TemporaryBasal>?): List<BaseElement> {
 
         if (L.isEnabled(L.TIDEPOOL)) log.debug("Syncing data between: " + DateUtil.dateAndTimeString(start) + " -> " + DateUtil.dateAndTimeString(end))
         if (end <= start) {
             if (L.isEnabled(L.TIDEPOOL)) log.debug("End is <= start: " + DateUtil.dateAndTimeString(start) + " " + DateUtil.dateAndTimeString(end))
-            return ""
+            return emptyList()
         }
         if (end - start > MAX_UPLOAD_SIZE) {
             if (L.isEnabled(L.TIDEPOOL)) log.debug("More than max range - rejecting")
-            return ""
+            return emptyList()
         }
 
         val records = LinkedList<BaseElement>()
+        // db queries include both bounds, dates are in msec so end - 1 is the last msec of page
+        val last = end - 1
 
         if (SP.getBoolean(R.string.key_tidepool_upload_bolus, true))
-            records.addAll(getTreatments(start, end))
+            records.addAll(getTreatments(start, last))
         if (SP.getBoolean(R.string.key_tidepool_upload_bg, true))
-            records.addAll(getBloodTests(start, end))
-        if (SP.getBoolean(R.string.key_tidepool_upload_tbr, true))
-            records.addAll(getBasals(start, end))
+            records.addAll(getBloodTests(start, last))
+        if (tbrs != null)
+            records.addAll(BasalElement.fromTemporaryBasals(tbrs, start, end)) // TODO do not upload running TBR
         if (SP.getBoolean(R.string.key_tidepool_upload_cgm, true))
-            records.addAll(getBgReadings(start, end))
+            records.addAll(getBgReadings(start, last))
         if (SP.getBoolean(R.string.key_tidepool_upload_profile, true))
-            records.addAll(getProfiles(start, end))
+            records.addAll(getProfiles(start, last))
 
-        return GsonInstance.defaultGsonInstance().toJson(records)
+        return records
     }
 
     // numeric limits must match max time windows
@@ -92,28 +112,18 @@ object UploadChunk {
 
     private fun getBloodTests(start: Long, end: Long): List<BloodGlucoseElement> {
         val readings = MainApp.getDbHelper().getCareportalEvents(start, end, true)
-        val selection = BloodGlucoseElement.fromCareportalEvents(readings)
-        if (selection.isNotEmpty())
-            RxBus.send(EventTidepoolStatus("${selection.size} BGs selected for upload"))
-        return selection
-
+        return BloodGlucoseElement.fromCareportalEvents(readings)
     }
 
     internal fun getBgReadings(start: Long, end: Long): List<SensorGlucoseElement> {
         val readings = MainApp.getDbHelper().getBgreadingsDataFromTime(start, end, true)
-        val selection = SensorGlucoseElement.fromBgReadings(readings)
-        if (selection.isNotEmpty())
-            RxBus.send(EventTidepoolStatus("${selection.size} CGMs selected for upload"))
-        return selection
+        return SensorGlucoseElement.fromBgReadings(readings)
     }
 
-    private fun getBasals(start: Long, end: Long): List<BasalElement> {
+    private fun getTemporaryBasals(): Intervals<TemporaryBasal> {
         val tbrs = TreatmentsPlugin.getPlugin().temporaryBasalsFromHistory
         tbrs.merge()
-        val selection = BasalElement.fromTemporaryBasals(tbrs, start, end) // TODO do not upload running TBR
-        if (selection.isNotEmpty())
-            RxBus.send(EventTidepoolStatus("${selection.size} TBRs selected for upload"))
-        return selection
+        return tbrs
     }
 
     private fun getProfiles(start: Long, end: Long): List<ProfileElement> {
@@ -122,8 +132,6 @@ object UploadChunk {
         for (ps in pss) {
             ProfileElement.newInstanceOrNull(ps)?.let { selection.add(it) }
         }
-        if (selection.size > 0)
-            RxBus.send(EventTidepoolStatus("${selection.size} ProfileSwitches selected for upload"))
         return selection
     }
 
@@ -0,0 +1,26 @@
+package info.nightscout.androidaps.plugins.general.tidepool.comm
+
+import com.google.gson.stream.JsonWriter
+import info.nightscout.androidaps.plugins.general.tidepool.elements.BaseElement
+import info.nightscout.androidaps.plugins.general.tidepool.utils.GsonInstance
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaTypeOrNull
+import okhttp3.RequestBody
+import okio.BufferedSink
+import java.io.OutputStreamWriter
+
+// Records are serialized directly to the connection instead of building whole payload String
+class UploadRequestBody(private val records: List<BaseElement>) : RequestBody() {
+
+    override fun contentType(): MediaType? = "application/json".toMediaTypeOrNull()
+
+    override fun writeTo(sink: BufferedSink) {
+        val gson = GsonInstance.defaultGsonInstance()
+        val writer = JsonWriter(OutputStreamWriter(sink.outputStream(), Charsets.UTF_8))
+        writer.beginArray()
+        for (record in records)
+            gson.toJson(record, record.javaClass, writer)
+        writer.endArray()
+        writer.flush()
+    }
+}
@@ -32,10 +32,11 @@ class BasalElement(tbr: TemporaryBasal)
     }
 
     companion object {
+        // tbrs started from start (inclusive) to end (exclusive)
         internal fun fromTemporaryBasals(tbrList: Intervals<TemporaryBasal>, start: Long, end: Long): List<BasalElement> {
             val results = LinkedList<BasalElement>()
             for (tbr in tbrList.list) {
-                if (tbr.date >= start && tbr.date <= end && tbr.durationInMinutes != 0)
+                if (tbr.date >= start && tbr.date < end && tbr.durationInMinutes != 0)
                     results.add(BasalElement(tbr))
             }
             return results
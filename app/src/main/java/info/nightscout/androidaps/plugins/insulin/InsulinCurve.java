@@ -0,0 +1,66 @@
+package info.nightscout.androidaps.plugins.insulin;
+
+/**
+ * Oref exponential insulin curve for 1U of insulin precalculated with 1 minute resolution.
+ * Values between whole minutes are linearly interpolated.
+ * Instance is immutable and valid only for the peak and DIA it was created for.
+ */
+class InsulinCurve {
+
+    private final int peak;
+    private final double td; // DIA in minutes
+
+    private final double[] iob;
+    private final double[] activity;
+
+    InsulinCurve(int peak, double td) {
+        this.peak = peak;
+        this.td = td;
+        int size = (int) Math.ceil(td) + 2;
+        iob = new double[size];
+        activity = new double[size];
+        for (int i = 0; i < size; i++) {
+            double t = Math.min(i, td);
+            iob[i] = iobFraction(t, peak, td);
+            activity[i] = activityFraction(t, peak, td);
+        }
+    }
+
+    boolean isFor(int peak, double td) {
+        return this.peak == peak && this.td == td;
+    }
+
+    // t in minutes, 0 <= t < td
+    double iob(double t) {
+        return interpolate(iob, t);
+    }
+
+    // t in minutes, 0 <= t < td
+    double activity(double t) {
+        return interpolate(activity, t);
+    }
+
+    private static double interpolate(double[] table, double t) {
+        int index = (int) t;
+        double fraction = t - index;
+        return table[index] + (table[index + 1] - table[index]) * fraction;
+    }
+
+    static double iobFraction(double t, int peak, double td) {
+        double tau = tau(peak, td);
+        double a = 2 * tau / td;
+        double S = 1 / (1 - a + (1 + a) * Math.exp(-td / tau));
+        return 1 - S * (1 - a) * ((Math.pow(t, 2) / (tau * td * (1 - a)) - t / tau - 1) * Math.exp(-t / tau) + 1);
+    }
+
+    static double activityFraction(double t, int peak, double td) {
+        double tau = tau(peak, td);
+        double a = 2 * tau / td;
+        double S = 1 / (1 - a + (1 + a) * Math.exp(-td / tau));
+        return (S / Math.pow(tau, 2)) * t * (1 - t / td) * Math.exp(-t / tau);
+    }
+
+    private static double tau(double tp, double td) {
+        return tp * (1 - tp / td) / (1 - 2 * tp / td);
+    }
+}
@@ -24,6 +24,8 @@ public abstract class InsulinOrefBasePlugin extends PluginBase implements Insuli
 
     long lastWarned = 0;
 
+    private volatile InsulinCurve curve = null;
+
     public InsulinOrefBasePlugin() {
         super(new PluginDescription()
                 .mainType(PluginType.INSULIN)
@@ -62,6 +64,16 @@ public abstract class InsulinOrefBasePlugin extends PluginBase implements Insuli
         return profile != null ? profile.getDia() : MIN_DIA;
     }
 
+    // curve is rebuilt when peak (preferences) or DIA (profile) changes
+    InsulinCurve getCurve(int peak, double td) {
+        InsulinCurve insulinCurve = curve;
+        if (insulinCurve == null || !insulinCurve.isFor(peak, td)) {
+            insulinCurve = new InsulinCurve(peak, td);
+            curve = insulinCurve;
+        }
+        return insulinCurve;
+    }
+
     public Iob iobCalcForTreatment(Treatment treatment, long time) {
         return this.iobCalcForTreatment(treatment, time, 0d);
     }
@@ -78,15 +90,17 @@ public abstract class InsulinOrefBasePlugin extends PluginBase implements Insuli
             double t = (time - bolusTime) / 1000d / 60d;
 
             double td = getDia() * 60; //getDIA() always >= MIN_DIA
-            double tp = peak;
 
             // force the IOB to 0 if over DIA hours have passed
             if (t < td) {
-                double tau = tp * (1 - tp / td) / (1 - 2 * tp / td);
-                double a = 2 * tau / td;
-                double S = 1 / (1 - a + (1 + a) * Math.exp(-td / tau));
-                result.activityContrib = treatment.insulin * (S / Math.pow(tau, 2)) * t * (1 - t / td) * Math.exp(-t / tau);
-                result.iobContrib = treatment.insulin * (1 - S * (1 - a) * ((Math.pow(t, 2) / (tau * td * (1 - a)) - t / tau - 1) * Math.exp(-t / tau) + 1));
+                if (t >= 0) {
+                    InsulinCurve insulinCurve = getCurve(peak, td);
+                    result.activityContrib = treatment.insulin * insulinCurve.activity(t);
+                    result.iobContrib = treatment.insulin * insulinCurve.iob(t);
+                } else {
+                    result.activityContrib = treatment.insulin * InsulinCurve.activityFraction(t, peak, td);
+                    result.iobContrib = treatment.insulin * InsulinCurve.iobFraction(t, peak, td);
+                }
             }
         }
         return result;
@@ -0,0 +1,78 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import info.nightscout.androidaps.db.BgReading;
+
+/**
+ * Dates and values of loaded BG readings in primitive arrays, newest at index 0.
+ * Keeps the list it was created from, indexes are the same, so readings and arrays
+ * are always published and read together as one immutable snapshot.
+ */
+public class BgTimeline {
+
+    private final List<BgReading> readings;
+    private final long[] dates;
+    private final double[] values;
+
+    public BgTimeline(List<BgReading> readings) {
+        this.readings = readings;
+        int size = readings == null ? 0 : readings.size();
+        dates = new long[size];
+        values = new double[size];
+        for (int i = 0; i < size; i++) {
+            BgReading reading = readings.get(i);
+            dates[i] = reading.date;
+            values[i] = reading.value;
+        }
+    }
+
+    @Nullable
+    public List<BgReading> readings() {
+        return readings;
+    }
+
+    public BgReading reading(int index) {
+        return readings.get(index);
+    }
+
+    public int size() {
+        return dates.length;
+    }
+
+    public long date(int index) {
+        return dates[index];
+    }
+
+    public double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return index of newest reading with date <= time or size() if there is no such reading
+     */
+    public int indexAtOrBefore(long time) {
+        int low = 0;
+        int high = dates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] <= time)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of oldest reading with date >= time or -1 if there is no such reading
+     */
+    public int indexAtOrAfter(long time) {
+        int index = indexAtOrBefore(time);
+        if (index < dates.length && dates[index] == time)
+            return index;
+        return index - 1;
+    }
+}
@@ -59,111 +59,122 @@ public class GlucoseStatus {
         //long fromtime = DateUtil.now() - 60 * 1000L * 45;
         //List<BgReading> data = MainApp.getDbHelper().getBgreadingsDataFromTime(fromtime, false);
 
-        synchronized (IobCobCalculatorPlugin.getPlugin().getDataLock()) {
+        // no dataLock here: bgReadings list is replaced on reload so we don't wait for running calculation
+        List<BgReading> data = IobCobCalculatorPlugin.getPlugin().getBgReadings();
 
-            List<BgReading> data = IobCobCalculatorPlugin.getPlugin().getBgReadings();
+        if (data == null) {
+            if (L.isEnabled(L.GLUCOSE))
+                log.debug("data=null");
+            return null;
+        }
 
-            if (data == null) {
-                if (L.isEnabled(L.GLUCOSE))
-                    log.debug("data=null");
-                return null;
-            }
+        int sizeRecords = data.size();
+        if (sizeRecords == 0) {
+            if (L.isEnabled(L.GLUCOSE))
+                log.debug("sizeRecords==0");
+            return null;
+        }
 
-            int sizeRecords = data.size();
-            if (sizeRecords == 0) {
-                if (L.isEnabled(L.GLUCOSE))
-                    log.debug("sizeRecords==0");
-                return null;
-            }
+        if (data.get(0).date < DateUtil.now() - 7 * 60 * 1000L && !allowOldData) {
+            if (L.isEnabled(L.GLUCOSE))
+                log.debug("olddata");
+            return null;
+        }
 
-            if (data.get(0).date < DateUtil.now() - 7 * 60 * 1000L && !allowOldData) {
-                if (L.isEnabled(L.GLUCOSE))
-                    log.debug("olddata");
-                return null;
-            }
+        BgReading now = data.get(0);
+        long now_date = now.date;
+        double now_value = now.value; // don't modify shared BgReading
+        double change;
 
-            BgReading now = data.get(0);
-            long now_date = now.date;
-            double change;
-
-            if (sizeRecords == 1) {
-                GlucoseStatus status = new GlucoseStatus();
-                status.glucose = now.value;
-                status.short_avgdelta = 0d;
-                status.delta = 0d;
-                status.long_avgdelta = 0d;
-                status.avgdelta = 0d; // for OpenAPS MA
-                status.date = now_date;
-                if (L.isEnabled(L.GLUCOSE))
-                    log.debug("sizeRecords==1");
-                return status.round();
-            }
+        if (sizeRecords == 1) {
+            GlucoseStatus status = new GlucoseStatus();
+            status.glucose = now_value;
+            status.short_avgdelta = 0d;
+            status.delta = 0d;
+            status.long_avgdelta = 0d;
+            status.avgdelta = 0d; // for OpenAPS MA
+            status.date = now_date;
+            if (L.isEnabled(L.GLUCOSE))
+                log.debug("sizeRecords==1");
+            return status.round();
+        }
+
+        // running sums instead of lists of boxed values, this runs on every BG and loop
+        double now_value_sum = now_value;
+        int now_value_count = 1;
+        double last_deltas_sum = 0d;
+        int last_deltas_count = 0;
+        double short_deltas_sum = 0d;
+        int short_deltas_count = 0;
+        double long_deltas_sum = 0d;
+        int long_deltas_count = 0;
+
+        for (int i = 1; i < sizeRecords; i++) {
+            if (data.get(i).value > 38) {
+                BgReading then = data.get(i);
+                long then_date = then.date;
+                double avgdelta;
+                long minutesago;
+
+                minutesago = Math.round((now_date - then_date) / (1000d * 60));
+                // multiply by 5 to get the same units as delta, i.e. mg/dL/5m
+                change = now_value - then.value;
+                avgdelta = change / minutesago * 5;
 
-            ArrayList<Double> now_value_list = new ArrayList<>();
-            ArrayList<Double> last_deltas = new ArrayList<>();
-            ArrayList<Double> short_deltas = new ArrayList<>();
-            ArrayList<Double> long_deltas = new ArrayList<>();
-
-            // Use the latest sgv value in the now calculations
-            now_value_list.add(now.value);
-
-            for (int i = 1; i < sizeRecords; i++) {
-                if (data.get(i).value > 38) {
-                    BgReading then = data.get(i);
-                    long then_date = then.date;
-                    double avgdelta;
-                    long minutesago;
-
-                    minutesago = Math.round((now_date - then_date) / (1000d * 60));
-                    // multiply by 5 to get the same units as delta, i.e. mg/dL/5m
-                    change = now.value - then.value;
-                    avgdelta = change / minutesago * 5;
-
-                    if (L.isEnabled(L.GLUCOSE))
-                        log.debug(then.toString() + " minutesago=" + minutesago + " avgdelta=" + avgdelta);
-
-                    // use the average of all data points in the last 2.5m for all further "now" calculations
-                    if (0 < minutesago && minutesago < 2.5) {
-                        // Keep and average all values within the last 2.5 minutes
-                        now_value_list.add(then.value);
-                        now.value = average(now_value_list);
-                        // short_deltas are calculated from everything ~5-15 minutes ago
-                    } else if (2.5 < minutesago && minutesago < 17.5) {
-                        //console.error(minutesago, avgdelta);
-                        short_deltas.add(avgdelta);
-                        // last_deltas are calculated from everything ~5 minutes ago
-                        if (2.5 < minutesago && minutesago < 7.5) {
-                            last_deltas.add(avgdelta);
-                        }
-                        // long_deltas are calculated from everything ~20-40 minutes ago
-                    } else if (17.5 < minutesago && minutesago < 42.5) {
-                        long_deltas.add(avgdelta);
-                    } else {
-                        // Do not process any more records after >= 42.5 minutes
-                        break;
+                if (L.isEnabled(L.GLUCOSE))
+                    log.debug(then.toString() + " minutesago=" + minutesago + " avgdelta=" + avgdelta);
+
+                // use the average of all data points in the last 2.5m for all further "now" calculations
+                if (0 < minutesago && minutesago < 2.5) {
+                    // Keep and average all values within the last 2.5 minutes
+                    now_value_sum += then.value;
+                    now_value_count++;
+                    now_value = now_value_sum / now_value_count;
+                    // short_deltas are calculated from everything ~5-15 minutes ago
+                } else if (2.5 < minutesago && minutesago < 17.5) {
+                    //console.error(minutesago, avgdelta);
+                    short_deltas_sum += avgdelta;
+                    short_deltas_count++;
+                    // last_deltas are calculated from everything ~5 minutes ago
+                    if (2.5 < minutesago && minutesago < 7.5) {
+                        last_deltas_sum += avgdelta;
+                        last_deltas_count++;
                     }
+                    // long_deltas are calculated from everything ~20-40 minutes ago
+                } else if (17.5 < minutesago && minutesago < 42.5) {
+                    long_deltas_sum += avgdelta;
+                    long_deltas_count++;
+                } else {
+                    // Do not process any more records after >= 42.5 minutes
+                    break;
                 }
             }
+        }
 
-            GlucoseStatus status = new GlucoseStatus();
-            status.glucose = now.value;
-            status.date = now_date;
+        GlucoseStatus status = new GlucoseStatus();
+        status.glucose = now_value;
+        status.date = now_date;
 
-            status.short_avgdelta = average(short_deltas);
+        status.short_avgdelta = average(short_deltas_sum, short_deltas_count);
 
-            if (last_deltas.isEmpty()) {
-                status.delta = status.short_avgdelta;
-            } else {
-                status.delta = average(last_deltas);
-            }
+        if (last_deltas_count == 0) {
+            status.delta = status.short_avgdelta;
+        } else {
+            status.delta = average(last_deltas_sum, last_deltas_count);
+        }
 
-            status.long_avgdelta = average(long_deltas);
-            status.avgdelta = status.short_avgdelta; // for OpenAPS MA
+        status.long_avgdelta = average(long_deltas_sum, long_deltas_count);
+        status.avgdelta = status.short_avgdelta; // for OpenAPS MA
 
-            if (L.isEnabled(L.GLUCOSE))
-                log.debug(status.log());
-            return status.round();
-        }
+        if (L.isEnabled(L.GLUCOSE))
+            log.debug(status.log());
+        return status.round();
+    }
+
+    private static double average(double sum, int count) {
+        if (count == 0)
+            return 0d;
+        return sum / count;
     }
 
     public static double average(ArrayList<Double> array) {
@@ -12,6 +12,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import info.nightscout.androidaps.Constants;
 import info.nightscout.androidaps.MainApp;
@@ -19,6 +21,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.IobTotal;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.events.Event;
 import info.nightscout.androidaps.events.EventAppInitialized;
@@ -41,6 +44,7 @@ import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.DecimalFormatter;
 import info.nightscout.androidaps.utils.FabricPrivacy;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.T;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.schedulers.Schedulers;
@@ -67,10 +71,18 @@ public class IobCobCalculatorPlugin extends PluginBase {
     private LongSparseArray<AutosensData> autosensDataTable = new LongSparseArray<>(); // oldest at index 0
     private LongSparseArray<BasalData> basalDataTable = new LongSparseArray<>(); // oldest at index 0
 
-    private volatile List<BgReading> bgReadings = null; // newest at index 0
+    private volatile BgTimeline bgTimeline = new BgTimeline(null); // loaded readings, newest at index 0
     private volatile List<BgReading> bucketed_data = null;
 
+    // dataLock guards autosensDataTable and calculation, cacheLock guards iobTable and basalDataTable
     private final Object dataLock = new Object();
+    private final Object cacheLock = new Object();
+    // changed with every removal from iobTable or basalDataTable, guarded by cacheLock
+    // value computed outside of lock is stored only if no invalidation happened meanwhile
+    private long cacheGeneration = 0;
+
+    // result of last finished calculation for readers which must not wait for dataLock
+    private final AtomicReference<IobCobSnapshot> snapshot = new AtomicReference<>(new IobCobSnapshot());
 
     boolean stopCalculationTrigger = false;
     private Thread thread = null;
@@ -102,8 +114,8 @@ public class IobCobCalculatorPlugin extends PluginBase {
                     synchronized (dataLock) {
                         if (L.isEnabled(L.AUTOSENS))
                             log.debug("Invalidating cached data because of configuration change. IOB: " + iobTable.size() + " Autosens: " + autosensDataTable.size() + " records");
-                        iobTable = new LongSparseArray<>();
                         autosensDataTable = new LongSparseArray<>();
+                        resetCache(false);
                     }
                     runCalculation("onEventConfigBuilderChange", System.currentTimeMillis(), false, true, event);
                 }, FabricPrivacy::logException)
@@ -124,12 +136,19 @@ public class IobCobCalculatorPlugin extends PluginBase {
                         return;
                     }
                     stopCalculation("onNewProfile");
+                    // only data after start of the active profile switch depend on new profile
+                    ProfileSwitch profileSwitch = TreatmentsPlugin.getPlugin().getProfileSwitchFromHistory(System.currentTimeMillis());
                     synchronized (dataLock) {
-                        if (L.isEnabled(L.AUTOSENS))
-                            log.debug("Invalidating cached data because of new profile. IOB: " + iobTable.size() + " Autosens: " + autosensDataTable.size() + " records");
-                        iobTable = new LongSparseArray<>();
-                        autosensDataTable = new LongSparseArray<>();
-                        basalDataTable = new LongSparseArray<>();
+                        if (profileSwitch != null && profileSwitch.profileJson != null) {
+                            if (L.isEnabled(L.AUTOSENS))
+                                log.debug("Invalidating cached data because of new profile from: " + DateUtil.dateAndTimeFullString(profileSwitch.date));
+                            invalidateCachedData(profileSwitch.date);
+                        } else {
+                            if (L.isEnabled(L.AUTOSENS))
+                                log.debug("Invalidating cached data because of new profile. IOB: " + iobTable.size() + " Autosens: " + autosensDataTable.size() + " records");
+                            autosensDataTable = new LongSparseArray<>();
+                            resetCache(true);
+                        }
                     }
                     runCalculation("onNewProfile", System.currentTimeMillis(), false, true, event);
                 }, FabricPrivacy::logException)
@@ -144,6 +163,7 @@ public class IobCobCalculatorPlugin extends PluginBase {
                             log.debug("Ignoring event for non default instance");
                         return;
                     }
+                    LoopTimings.mark(LoopTimings.Stage.CALCULATION_START);
                     stopCalculation("onEventNewBG");
                     runCalculation("onEventNewBG", System.currentTimeMillis(), true, true, event);
                 }, FabricPrivacy::logException)
@@ -171,9 +191,8 @@ public class IobCobCalculatorPlugin extends PluginBase {
                         synchronized (dataLock) {
                             if (L.isEnabled(L.AUTOSENS))
                                 log.debug("Invalidating cached data because of preference change. IOB: " + iobTable.size() + " Autosens: " + autosensDataTable.size() + " records" + " BasalData: " + basalDataTable.size() + " records");
-                            iobTable = new LongSparseArray<>();
                             autosensDataTable = new LongSparseArray<>();
-                            basalDataTable = new LongSparseArray<>();
+                            resetCache(true);
                         }
                         runCalculation("onEventPreferenceChange", System.currentTimeMillis(), false, true, event);
                     }
@@ -194,7 +213,8 @@ public class IobCobCalculatorPlugin extends PluginBase {
         );
         // EventNewHistoryData
         disposable.add(RxBus.INSTANCE
-                .toObservable(EventNewHistoryData.class)
+                // burst of changes (NS sync) is merged to one invalidation from the oldest change
+                .toObservable(EventNewHistoryData.class, 1, 10, TimeUnit.SECONDS, (ev1, ev2) -> ev1.getTime() <= ev2.getTime() ? ev1 : ev2)
                 .observeOn(Schedulers.io())
                 .subscribe(event -> newHistoryData(event), FabricPrivacy::logException)
         );
@@ -210,12 +230,37 @@ public class IobCobCalculatorPlugin extends PluginBase {
         return autosensDataTable;
     }
 
+    /**
+     * Lock free access to the result of the last finished calculation.
+     * Data being calculated right now are not visible here
+     */
+    public IobCobSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    // Called by calculation thread at the end of successful pass with dataLock held
+    void publishSnapshot() {
+        IobCobSnapshot previous = snapshot.get();
+        snapshot.set(new IobCobSnapshot(previous.getVersion() + 1, autosensDataTable.clone(), bucketed_data));
+        if (L.isEnabled(L.AUTOSENS))
+            log.debug("Published snapshot version " + (previous.getVersion() + 1) + " Autosens: " + autosensDataTable.size() + " records");
+    }
+
+    private void resetCache(boolean basalData) {
+        synchronized (cacheLock) {
+            cacheGeneration++;
+            iobTable = new LongSparseArray<>();
+            if (basalData)
+                basalDataTable = new LongSparseArray<>();
+        }
+    }
+
     public List<BgReading> getBgReadings() {
-        return bgReadings;
+        return bgTimeline.readings();
     }
 
     public void setBgReadings(List<BgReading> bgReadings) {
-        this.bgReadings = bgReadings;
+        this.bgTimeline = new BgTimeline(bgReadings);
     }
 
     public List<BgReading> getBucketedData() {
@@ -242,25 +287,26 @@ public class IobCobCalculatorPlugin extends PluginBase {
         if (DateUtil.isCloseToNow(to)) {
             // if close to now expect there can be some readings with time in close future (caused by wrong time setting)
             // so read all records
-            bgReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(start, false);
+            setBgReadings(MainApp.getDbHelper().getBgreadingsDataFromTime(start, false));
             if (L.isEnabled(L.AUTOSENS))
-                log.debug("BG data loaded. Size: " + bgReadings.size() + " Start date: " + DateUtil.dateAndTimeString(start));
+                log.debug("BG data loaded. Size: " + bgTimeline.size() + " Start date: " + DateUtil.dateAndTimeString(start));
         } else {
-            bgReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(start, to, false);
+            setBgReadings(MainApp.getDbHelper().getBgreadingsDataFromTime(start, to, false));
             if (L.isEnabled(L.AUTOSENS))
-                log.debug("BG data loaded. Size: " + bgReadings.size() + " Start date: " + DateUtil.dateAndTimeString(start) + " End date: " + DateUtil.dateAndTimeString(to));
+                log.debug("BG data loaded. Size: " + bgTimeline.size() + " Start date: " + DateUtil.dateAndTimeString(start) + " End date: " + DateUtil.dateAndTimeString(to));
         }
     }
 
     public boolean isAbout5minData() {
         synchronized (dataLock) {
-            if (bgReadings == null || bgReadings.size() < 3) {
+            BgTimeline timeline = bgTimeline;
+            if (timeline.size() < 3) {
                 return true;
             }
             long totalDiff = 0;
-            for (int i = 1; i < bgReadings.size(); ++i) {
-                long bgTime = bgReadings.get(i).date;
-                long lastbgTime = bgReadings.get(i - 1).date;
+            for (int i = 1; i < timeline.size(); ++i) {
+                long bgTime = timeline.date(i);
+                long lastbgTime = timeline.date(i - 1);
                 long diff = lastbgTime - bgTime;
                 diff %= T.mins(5).msecs();
                 if (diff > T.mins(2).plus(T.secs(30)).msecs())
@@ -269,14 +315,14 @@ public class IobCobCalculatorPlugin extends PluginBase {
                 diff = Math.abs(diff);
                 if (diff > T.secs(30).msecs()) {
                     if (L.isEnabled(L.AUTOSENS))
-                        log.debug("Interval detection: values: " + bgReadings.size() + " diff: " + (diff / 1000) + "[s] is5minData: " + false);
+                        log.debug("Interval detection: values: " + timeline.size() + " diff: " + (diff / 1000) + "[s] is5minData: " + false);
                     return false;
                 }
             }
-            long averageDiff = totalDiff / bgReadings.size() / 1000;
+            long averageDiff = totalDiff / timeline.size() / 1000;
             boolean is5mindata = averageDiff < 1;
             if (L.isEnabled(L.AUTOSENS))
-                log.debug("Interval detection: values: " + bgReadings.size() + " averageDiff: " + averageDiff + "[s] is5minData: " + is5mindata);
+                log.debug("Interval detection: values: " + timeline.size() + " averageDiff: " + averageDiff + "[s] is5minData: " + is5mindata);
             return is5mindata;
         }
     }
@@ -290,59 +336,53 @@ public class IobCobCalculatorPlugin extends PluginBase {
 
     @Nullable
     public BgReading findNewer(long time) {
-        BgReading lastFound = bgReadings.get(0);
-        if (lastFound.date < time) return null;
-        for (int i = 1; i < bgReadings.size(); ++i) {
-            if (bgReadings.get(i).date == time) return bgReadings.get(i);
-            if (bgReadings.get(i).date > time) continue;
-            lastFound = bgReadings.get(i - 1);
-            if (bgReadings.get(i).date < time) break;
-        }
-        return lastFound;
+        BgTimeline timeline = bgTimeline;
+        int index = timeline.indexAtOrAfter(time);
+        if (index < 0) return null;
+        return timeline.reading(index);
     }
 
     @Nullable
     public BgReading findOlder(long time) {
-        BgReading lastFound = bgReadings.get(bgReadings.size() - 1);
-        if (lastFound.date > time) return null;
-        for (int i = bgReadings.size() - 2; i >= 0; --i) {
-            if (bgReadings.get(i).date == time) return bgReadings.get(i);
-            if (bgReadings.get(i).date < time) continue;
-            lastFound = bgReadings.get(i + 1);
-            if (bgReadings.get(i).date > time) break;
-        }
-        return lastFound;
+        BgTimeline timeline = bgTimeline;
+        int index = timeline.indexAtOrBefore(time);
+        if (index >= timeline.size()) return null;
+        return timeline.reading(index);
     }
 
     private void createBucketedDataRecalculated() {
-        if (bgReadings == null || bgReadings.size() < 3) {
+        BgTimeline timeline = bgTimeline;
+        if (timeline.size() < 3) {
             bucketed_data = null;
             return;
         }
 
         bucketed_data = new ArrayList<>();
-        long currentTime = bgReadings.get(0).date - bgReadings.get(0).date % T.mins(5).msecs();
+        long currentTime = timeline.date(0) - timeline.date(0) % T.mins(5).msecs();
         //log.debug("First reading: " + new Date(currentTime).toLocaleString());
 
+        // buckets are going back in time so index of older reading only moves forward
+        int older = 0;
         while (true) {
-            // test if current value is older than current time
-            BgReading newer = findNewer(currentTime);
-            BgReading older = findOlder(currentTime);
-            if (newer == null || older == null)
+            while (older < timeline.size() && timeline.date(older) > currentTime)
+                older++;
+            if (older >= timeline.size())
                 break;
 
-            if (older.date == newer.date) { // direct hit
-                bucketed_data.add(newer);
+            if (timeline.date(older) == currentTime) { // direct hit
+                bucketed_data.add(timeline.reading(older));
             } else {
-                double bgDelta = newer.value - older.value;
-                long timeDiffToNew = newer.date - currentTime;
+                int newer = older - 1;
+                if (newer < 0)
+                    break;
+                double bgDelta = timeline.value(newer) - timeline.value(older);
+                long timeDiffToNew = timeline.date(newer) - currentTime;
 
-                double currentBg = newer.value - (double) timeDiffToNew / (newer.date - older.date) * bgDelta;
+                double currentBg = timeline.value(newer) - (double) timeDiffToNew / (timeline.date(newer) - timeline.date(older)) * bgDelta;
                 BgReading newBgreading = new BgReading();
                 newBgreading.date = currentTime;
                 newBgreading.value = Math.round(currentBg);
                 bucketed_data.add(newBgreading);
-                //log.debug("BG: " + newBgreading.value + " (" + new Date(newBgreading.date).toLocaleString() + ") Prev: " + older.value + " (" + new Date(older.date).toLocaleString() + ") Newer: " + newer.value + " (" + new Date(newer.date).toLocaleString() + ")");
             }
             currentTime -= T.mins(5).msecs();
 
@@ -351,28 +391,29 @@ public class IobCobCalculatorPlugin extends PluginBase {
 
 
     private void createBucketedData5min() {
-        if (bgReadings == null || bgReadings.size() < 3) {
+        BgTimeline timeline = bgTimeline;
+        if (timeline.size() < 3) {
             bucketed_data = null;
             return;
         }
 
         bucketed_data = new ArrayList<>();
-        bucketed_data.add(bgReadings.get(0));
+        bucketed_data.add(timeline.reading(0));
         if (L.isEnabled(L.AUTOSENS))
-            log.debug("Adding. bgTime: " + DateUtil.toISOString(bgReadings.get(0).date) + " lastbgTime: " + "none-first-value" + " " + bgReadings.get(0).toString());
+            log.debug("Adding. bgTime: " + DateUtil.toISOString(timeline.date(0)) + " lastbgTime: " + "none-first-value" + " " + timeline.reading(0).toString());
         int j = 0;
-        for (int i = 1; i < bgReadings.size(); ++i) {
-            long bgTime = bgReadings.get(i).date;
-            long lastbgTime = bgReadings.get(i - 1).date;
-            //log.error("Processing " + i + ": " + new Date(bgTime).toString() + " " + bgReadings.get(i).value + "   Previous: " + new Date(lastbgTime).toString() + " " + bgReadings.get(i - 1).value);
-            if (bgReadings.get(i).value < 39 || bgReadings.get(i - 1).value < 39) {
+        for (int i = 1; i < timeline.size(); ++i) {
+            long bgTime = timeline.date(i);
+            long lastbgTime = timeline.date(i - 1);
+            //log.error("Processing " + i + ": " + new Date(bgTime).toString() + " " + timeline.value(i) + "   Previous: " + new Date(lastbgTime).toString() + " " + timeline.value(i - 1));
+            if (timeline.value(i) < 39 || timeline.value(i - 1) < 39) {
                 throw new IllegalStateException("<39");
             }
 
             long elapsed_minutes = (bgTime - lastbgTime) / (60 * 1000);
             if (Math.abs(elapsed_minutes) > 8) {
                 // interpolate missing data points
-                double lastbg = bgReadings.get(i - 1).value;
+                double lastbg = timeline.value(i - 1);
                 elapsed_minutes = Math.abs(elapsed_minutes);
                 //console.error(elapsed_minutes);
                 long nextbgTime;
@@ -381,7 +422,7 @@ public class IobCobCalculatorPlugin extends PluginBase {
                     j++;
                     BgReading newBgreading = new BgReading();
                     newBgreading.date = nextbgTime;
-                    double gapDelta = bgReadings.get(i).value - lastbg;
+                    double gapDelta = timeline.value(i) - lastbg;
                     //console.error(gapDelta, lastbg, elapsed_minutes);
                     double nextbg = lastbg + (5d / elapsed_minutes * gapDelta);
                     newBgreading.value = Math.round(nextbg);
@@ -396,7 +437,7 @@ public class IobCobCalculatorPlugin extends PluginBase {
                 }
                 j++;
                 BgReading newBgreading = new BgReading();
-                newBgreading.value = bgReadings.get(i).value;
+                newBgreading.value = timeline.value(i);
                 newBgreading.date = bgTime;
                 bucketed_data.add(newBgreading);
                 if (L.isEnabled(L.AUTOSENS))
@@ -404,13 +445,13 @@ public class IobCobCalculatorPlugin extends PluginBase {
             } else if (Math.abs(elapsed_minutes) > 2) {
                 j++;
                 BgReading newBgreading = new BgReading();
-                newBgreading.value = bgReadings.get(i).value;
+                newBgreading.value = timeline.value(i);
                 newBgreading.date = bgTime;
                 bucketed_data.add(newBgreading);
                 if (L.isEnabled(L.AUTOSENS))
                     log.debug("Adding. bgTime: " + DateUtil.toISOString(bgTime) + " lastbgTime: " + DateUtil.toISOString(lastbgTime) + " " + newBgreading.toString());
             } else {
-                bucketed_data.get(j).value = (bucketed_data.get(j).value + bgReadings.get(i).value) / 2;
+                bucketed_data.get(j).value = (bucketed_data.get(j).value + timeline.value(i)) / 2;
                 //log.error("***** Average");
             }
         }
@@ -437,6 +478,23 @@ public class IobCobCalculatorPlugin extends PluginBase {
             log.debug("Bucketed data created. Size: " + bucketed_data.size());
     }
 
+    /**
+     * Find index of the newest bucket which has already calculated AutosensData.
+     * Invalidation always removes the newest part of autosensDataTable so everything
+     * older than this index is valid and calculation can continue from here
+     *
+     * @param bucketed_data newest at index 0
+     * @return index to resume from or bucketed_data.size() - 3 if nothing is calculated yet
+     */
+    public int findResumeIndex(List<BgReading> bucketed_data) {
+        int oldest = bucketed_data.size() - 3;
+        for (int i = 0; i < oldest; i++) {
+            if (autosensDataTable.get(roundUpTime(bucketed_data.get(i).date)) != null)
+                return i;
+        }
+        return oldest;
+    }
+
     public long calculateDetectionStart(long from, boolean limitDataToOldestAvailable) {
         Profile profile = ProfileFunctions.getInstance().getProfile(from);
         double dia = Constants.defaultDIA;
@@ -454,26 +512,20 @@ public class IobCobCalculatorPlugin extends PluginBase {
         return getBGDataFrom;
     }
 
-    public IobTotal calculateFromTreatmentsAndTempsSynchronized(long time, Profile profile) {
-        synchronized (dataLock) {
-            return calculateFromTreatmentsAndTemps(time, profile);
-        }
-    }
-
-    public IobTotal calculateFromTreatmentsAndTempsSynchronized(long time, AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
-        synchronized (dataLock) {
-            return calculateFromTreatmentsAndTemps(time, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
-        }
-    }
-
+    // iobTable has its own lock so callers (UI, graph, loop) don't wait for running calculation
     public IobTotal calculateFromTreatmentsAndTemps(long time, Profile profile) {
         long now = System.currentTimeMillis();
         time = roundUpTime(time);
-        if (time < now && iobTable.get(time) != null) {
+        long generation;
+        IobTotal cached = null;
+        synchronized (cacheLock) {
+            generation = cacheGeneration;
+            if (time < now)
+                cached = iobTable.get(time);
+        }
+        if (cached != null) {
             //og.debug(">>> calculateFromTreatmentsAndTemps Cache hit " + new Date(time).toLocaleString());
-            return iobTable.get(time);
-        } else {
-            //log.debug(">>> calculateFromTreatmentsAndTemps Cache miss " + new Date(time).toLocaleString());
+            return cached;
         }
         IobTotal bolusIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTreatments(time).round();
         IobTotal basalIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTempBasals(time, true, now).round();
@@ -494,7 +546,10 @@ public class IobCobCalculatorPlugin extends PluginBase {
 
         IobTotal iobTotal = IobTotal.combine(bolusIob, basalIob).round();
         if (time < System.currentTimeMillis()) {
-            iobTable.put(time, iobTotal);
+            synchronized (cacheLock) {
+                if (generation == cacheGeneration)
+                    iobTable.put(time, iobTotal);
+            }
         }
         return iobTotal;
     }
@@ -537,30 +592,36 @@ public class IobCobCalculatorPlugin extends PluginBase {
     }
 
     public BasalData getBasalData(Profile profile, long time) {
-        synchronized (dataLock) {
-            long now = System.currentTimeMillis();
-            time = roundUpTime(time);
-            BasalData retval = basalDataTable.get(time);
-            if (retval == null) {
-                retval = new BasalData();
-                TemporaryBasal tb = TreatmentsPlugin.getPlugin().getTempBasalFromHistory(time);
-                retval.basal = profile.getBasal(time);
-                if (tb != null) {
-                    retval.isTempBasalRunning = true;
-                    retval.tempBasalAbsolute = tb.tempBasalConvertedToAbsolute(time, profile);
-                } else {
-                    retval.isTempBasalRunning = false;
-                    retval.tempBasalAbsolute = retval.basal;
-                }
-                if (time < now) {
-                    basalDataTable.append(time, retval);
-                }
-                //log.debug(">>> getBasalData Cache miss " + new Date(time).toLocaleString());
+        long now = System.currentTimeMillis();
+        time = roundUpTime(time);
+        BasalData retval;
+        long generation;
+        synchronized (cacheLock) {
+            generation = cacheGeneration;
+            retval = basalDataTable.get(time);
+        }
+        if (retval == null) {
+            retval = new BasalData();
+            TemporaryBasal tb = TreatmentsPlugin.getPlugin().getTempBasalFromHistory(time);
+            retval.basal = profile.getBasal(time);
+            if (tb != null) {
+                retval.isTempBasalRunning = true;
+                retval.tempBasalAbsolute = tb.tempBasalConvertedToAbsolute(time, profile);
             } else {
-                //log.debug(">>> getBasalData Cache hit " +  new Date(time).toLocaleString());
+                retval.isTempBasalRunning = false;
+                retval.tempBasalAbsolute = retval.basal;
+            }
+            if (time < now) {
+                synchronized (cacheLock) {
+                    if (generation == cacheGeneration)
+                        basalDataTable.append(time, retval);
+                }
             }
-            return retval;
+            //log.debug(">>> getBasalData Cache miss " + new Date(time).toLocaleString());
+        } else {
+            //log.debug(">>> getBasalData Cache hit " +  new Date(time).toLocaleString());
         }
+        return retval;
     }
 
     @Nullable
@@ -599,7 +660,8 @@ public class IobCobCalculatorPlugin extends PluginBase {
                 log.debug("AUTOSENSDATA finished waiting for calculation thread: " + reason);
         }
         synchronized (dataLock) {
-            return getLastAutosensData(reason);
+            AutosensData last = autosensDataTable.size() > 0 ? autosensDataTable.valueAt(autosensDataTable.size() - 1) : null;
+            return checkLastAutosensData(last, autosensDataTable.size(), reason);
         }
     }
 
@@ -635,40 +697,37 @@ public class IobCobCalculatorPlugin extends PluginBase {
         double sum = 0;
         int count = 0;
         int valuesToProcess = timeInMinutes / 5;
-        synchronized (dataLock) {
-            for (int i = autosensDataTable.size() - 1; i >= 0 && count < valuesToProcess; i--) {
-                if (autosensDataTable.valueAt(i).failoverToMinAbsorbtionRate)
-                    sum++;
-                count++;
-            }
+        IobCobSnapshot current = snapshot.get();
+        for (int i = current.size() - 1; i >= 0 && count < valuesToProcess; i--) {
+            if (current.valueAt(i).failoverToMinAbsorbtionRate)
+                sum++;
+            count++;
         }
         return sum / count;
     }
 
+    // Last data from finished calculation, doesn't block UI
+    // APS plugin should use getLastAutosensDataSynchronized which waits for running calculation
     @Nullable
     public AutosensData getLastAutosensData(String reason) {
-        if (autosensDataTable.size() < 1) {
+        IobCobSnapshot current = snapshot.get();
+        return checkLastAutosensData(current.getLast(), current.size(), reason);
+    }
+
+    @Nullable
+    private AutosensData checkLastAutosensData(@Nullable AutosensData data, int size, String reason) {
+        if (size < 1) {
             if (L.isEnabled(L.AUTOSENS))
                 log.debug("AUTOSENSDATA null: autosensDataTable empty (" + reason + ")");
             return null;
         }
-        AutosensData data;
-        try {
-            data = autosensDataTable.valueAt(autosensDataTable.size() - 1);
-        } catch (Exception e) {
-            // data can be processed on the background
-            // in this rare case better return null and do not block UI
-            // APS plugin should use getLastAutosensDataSynchronized where the blocking is not an issue
-            log.debug("AUTOSENSDATA null: Exception catched (" + reason + ")");
-            return null;
-        }
         if (data == null) {
             log.debug("AUTOSENSDATA null: data==null");
             return null;
         }
         if (data.time < System.currentTimeMillis() - 11 * 60 * 1000) {
             if (L.isEnabled(L.AUTOSENS))
-                log.debug("AUTOSENSDATA null: data is old (" + reason + ") size()=" + autosensDataTable.size() + " lastdata=" + DateUtil.dateAndTimeString(data.time));
+                log.debug("AUTOSENSDATA null: data is old (" + reason + ") size()=" + size + " lastdata=" + DateUtil.dateAndTimeString(data.time));
             return null;
         } else {
             if (L.isEnabled(L.AUTOSENS))
@@ -686,31 +745,57 @@ public class IobCobCalculatorPlugin extends PluginBase {
 
     public IobTotal[] calculateIobArrayInDia(Profile profile) {
         // predict IOB out to DIA plus 30m
-        long time = System.currentTimeMillis();
-        time = roundUpTime(time);
+        long now = System.currentTimeMillis();
+        long time = roundUpTime(now);
         int len = (int) ((profile.getDia() * 60 + 30) / 5);
-        IobTotal[] array = new IobTotal[len];
-        int pos = 0;
-        for (int i = 0; i < len; i++) {
-            long t = time + i * 5 * 60000;
-            IobTotal iob = calculateFromTreatmentsAndTempsSynchronized(t, profile);
-            array[pos] = iob;
-            pos++;
-        }
-        return array;
+        long[] times = new long[len];
+        for (int i = 0; i < len; i++)
+            times[i] = time + i * 5 * 60000;
+        IobTotal[] bolusIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTreatments(times);
+        IobTotal[] basalIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTempBasals(times, now, null, false, 0, false);
+        return combineIobArray(times, now, bolusIob, basalIob, profile, null, false, 0, false);
     }
 
     public IobTotal[] calculateIobArrayForSMB(AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
         // predict IOB out to DIA plus 30m
         long now = DateUtil.now();
         int len = (4 * 60) / 5;
-        IobTotal[] array = new IobTotal[len];
-        int pos = 0;
-        for (int i = 0; i < len; i++) {
-            long t = now + i * 5 * 60000;
-            IobTotal iob = calculateFromTreatmentsAndTempsSynchronized(t, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
-            array[pos] = iob;
-            pos++;
+        long[] times = new long[len];
+        for (int i = 0; i < len; i++)
+            times[i] = now + i * 5 * 60000;
+        IobTotal[] bolusIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTreatments(times);
+        IobTotal[] basalIob = TreatmentsPlugin.getPlugin().getCalculationToTimeTempBasals(times, now, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
+        return combineIobArray(times, now, bolusIob, basalIob, null, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
+    }
+
+    // same as calculateFromTreatmentsAndTemps for every time, profile is used if lastAutosensResult == null
+    private IobTotal[] combineIobArray(long[] times, long now, IobTotal[] bolusIob, IobTotal[] basalIob, Profile profile, AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
+        boolean withZeroTemp = OpenAPSSMBPlugin.getPlugin().isEnabled(PluginType.APS);
+        // Add expected zero temp basal for next 240 mins
+        TemporaryBasal zeroTemp = new TemporaryBasal()
+                .date(now + 60 * 1000L)
+                .duration(240)
+                .absolute(0);
+        Profile zeroTempProfile = lastAutosensResult == null ? profile : ProfileFunctions.getInstance().getProfile(zeroTemp.date);
+
+        IobTotal[] array = new IobTotal[times.length];
+        for (int i = 0; i < times.length; i++) {
+            long time = times[i];
+            IobTotal bolus = bolusIob[i].round();
+            IobTotal basal = basalIob[i].round();
+            if (withZeroTemp) {
+                IobTotal basalIobWithZeroTemp = basal.copy();
+                if (zeroTemp.date < time && zeroTempProfile != null) {
+                    IobTotal calc;
+                    if (lastAutosensResult == null)
+                        calc = zeroTemp.iobCalc(time, zeroTempProfile);
+                    else
+                        calc = zeroTemp.iobCalc(time, zeroTempProfile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
+                    basalIobWithZeroTemp.plus(calc);
+                }
+                basal.iobWithZeroTemp = IobTotal.combine(bolus, basalIobWithZeroTemp).round();
+            }
+            array[i] = IobTotal.combine(bolus, basal).round();
         }
         return array;
     }
@@ -775,10 +860,30 @@ public class IobCobCalculatorPlugin extends PluginBase {
         //log.debug("Locking onNewHistoryData");
         stopCalculation("onEventNewHistoryData");
         synchronized (dataLock) {
-            // clear up 5 min back for proper COB calculation
-            long time = ev.getTime() - 5 * 60 * 1000L;
-            if (L.isEnabled(L.AUTOSENS))
-                log.debug("Invalidating cached data to: " + DateUtil.dateAndTimeFullString(time));
+            invalidateCachedData(ev.getTime());
+        }
+        runCalculation("onEventNewHistoryData", System.currentTimeMillis(), false, true, ev);
+        //log.debug("Releasing onNewHistoryData");
+    }
+
+    // Remove only cached records newer than changeTime, older records stay valid and calculation threads resume from them
+    // Must be called with dataLock held
+    private void invalidateCachedData(long changeTime) {
+        // clear up 5 min back for proper COB calculation
+        long time = changeTime - 5 * 60 * 1000L;
+        if (L.isEnabled(L.AUTOSENS))
+            log.debug("Invalidating cached data to: " + DateUtil.dateAndTimeFullString(time));
+        for (int index = autosensDataTable.size() - 1; index >= 0; index--) {
+            if (autosensDataTable.keyAt(index) > time) {
+                if (L.isEnabled(L.AUTOSENS))
+                    log.debug("Removing from autosensDataTable: " + DateUtil.dateAndTimeFullString(autosensDataTable.keyAt(index)));
+                autosensDataTable.removeAt(index);
+            } else {
+                break;
+            }
+        }
+        synchronized (cacheLock) {
+            cacheGeneration++;
             for (int index = iobTable.size() - 1; index >= 0; index--) {
                 if (iobTable.keyAt(index) > time) {
                     if (L.isEnabled(L.AUTOSENS))
@@ -788,15 +893,6 @@ public class IobCobCalculatorPlugin extends PluginBase {
                     break;
                 }
             }
-            for (int index = autosensDataTable.size() - 1; index >= 0; index--) {
-                if (autosensDataTable.keyAt(index) > time) {
-                    if (L.isEnabled(L.AUTOSENS))
-                        log.debug("Removing from autosensDataTable: " + DateUtil.dateAndTimeFullString(autosensDataTable.keyAt(index)));
-                    autosensDataTable.removeAt(index);
-                } else {
-                    break;
-                }
-            }
             for (int index = basalDataTable.size() - 1; index >= 0; index--) {
                 if (basalDataTable.keyAt(index) > time) {
                     if (L.isEnabled(L.AUTOSENS))
@@ -807,17 +903,15 @@ public class IobCobCalculatorPlugin extends PluginBase {
                 }
             }
         }
-        runCalculation("onEventNewHistoryData", System.currentTimeMillis(), false, true, ev);
-        //log.debug("Releasing onNewHistoryData");
     }
 
     public void clearCache() {
         synchronized (dataLock) {
             if (L.isEnabled(L.AUTOSENS))
                 log.debug("Clearing cached data.");
-            iobTable = new LongSparseArray<>();
             autosensDataTable = new LongSparseArray<>();
-            basalDataTable = new LongSparseArray<>();
+            resetCache(true);
+            // last published snapshot stays visible until next calculation publishes new one
         }
     }
 
@@ -0,0 +1,61 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import java.util.List;
+
+import info.nightscout.androidaps.db.BgReading;
+
+/**
+ * Immutable copy of the result of the last finished calculation pass.
+ * IobCobCalculatorPlugin publishes new version when calculation thread finishes
+ * and readers (overview, wear, SMS ...) use it without waiting for dataLock.
+ */
+public class IobCobSnapshot {
+
+    private final long version;
+    private final LongSparseArray<AutosensData> autosensDataTable; // oldest at index 0, never modified
+    @Nullable
+    private final List<BgReading> bucketedData; // newest at index 0, never modified
+
+    IobCobSnapshot() {
+        this(0, new LongSparseArray<>(), null);
+    }
+
+    IobCobSnapshot(long version, LongSparseArray<AutosensData> autosensDataTable, @Nullable List<BgReading> bucketedData) {
+        this.version = version;
+        this.autosensDataTable = autosensDataTable;
+        this.bucketedData = bucketedData;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return autosensDataTable.size();
+    }
+
+    // index 0 is the oldest record
+    public AutosensData valueAt(int index) {
+        return autosensDataTable.valueAt(index);
+    }
+
+    @Nullable
+    public AutosensData getLast() {
+        if (autosensDataTable.size() < 1) return null;
+        return autosensDataTable.valueAt(autosensDataTable.size() - 1);
+    }
+
+    @Nullable
+    public AutosensData getAutosensData(long time) {
+        if (time > System.currentTimeMillis() || bucketedData == null)
+            return null;
+        for (int index = 0; index < bucketedData.size(); index++) {
+            if (bucketedData.get(index).date <= time)
+                return autosensDataTable.get(IobCobCalculatorPlugin.roundUpTime(bucketedData.get(index).date));
+        }
+        return null;
+    }
+}
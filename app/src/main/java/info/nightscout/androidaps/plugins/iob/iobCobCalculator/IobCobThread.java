@@ -20,6 +20,7 @@ import info.nightscout.androidaps.data.IobTotal;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.db.BgReading;
 import info.nightscout.androidaps.events.Event;
+import info.nightscout.androidaps.events.EventNewBG;
 import info.nightscout.androidaps.interfaces.PluginType;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults;
@@ -37,6 +38,7 @@ import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.DecimalFormatter;
 import info.nightscout.androidaps.utils.FabricPrivacy;
+import info.nightscout.androidaps.utils.LoopTimings;
 import info.nightscout.androidaps.utils.MidnightTime;
 import info.nightscout.androidaps.utils.Profiler;
 import info.nightscout.androidaps.utils.SP;
@@ -111,12 +113,14 @@ public class IobCobThread extends Thread {
                     return;
                 }
 
-                long prevDataTime = IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(bucketed_data.size() - 3).date);
+                // continue after newest already calculated record, only new buckets or invalidated suffix are processed
+                int resumeIndex = iobCobCalculatorPlugin.findResumeIndex(bucketed_data);
+                long prevDataTime = IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(resumeIndex).date);
                 if (L.isEnabled(L.AUTOSENS))
-                    log.debug("Prev data time: " + new Date(prevDataTime).toLocaleString());
+                    log.debug("Prev data time: " + new Date(prevDataTime).toLocaleString() + " resuming at " + resumeIndex + "/" + bucketed_data.size());
                 AutosensData previous = autosensDataTable.get(prevDataTime);
                 // start from oldest to be able sub cob
-                for (int i = bucketed_data.size() - 4; i >= 0; i--) {
+                for (int i = resumeIndex - 1; i >= 0; i--) {
                     String progress = i + (MainApp.isDev() ? " (" + from + ")" : "");
                     RxBus.INSTANCE.send(new EventIobCalculationProgress(progress));
 
@@ -310,7 +314,10 @@ public class IobCobThread extends Thread {
                     if (L.isEnabled(L.AUTOSENS))
                         log.debug(autosensData.toString());
                 }
+                iobCobCalculatorPlugin.publishSnapshot();
             }
+            if (cause instanceof EventNewBG)
+                LoopTimings.mark(LoopTimings.Stage.AUTOSENS);
             new Thread(() -> {
                 SystemClock.sleep(1000);
                 RxBus.INSTANCE.send(new EventAutosensCalculationFinished(cause));
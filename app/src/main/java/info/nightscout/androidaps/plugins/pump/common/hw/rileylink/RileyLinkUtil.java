@@ -20,6 +20,7 @@ import info.nightscout.androidaps.plugins.bus.RxBus;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkBLE;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6b;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGeoff;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bTable;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkEncodingType;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
@@ -75,6 +76,8 @@ public class RileyLinkUtil {
 
         if (encoding == RileyLinkEncodingType.FourByteSixByteLocal) {
             RileyLinkUtil.encoding4b6b = new Encoding4b6bGeoff();
+        } else if (encoding == RileyLinkEncodingType.FourByteSixByteLocalTable) {
+            RileyLinkUtil.encoding4b6b = new Encoding4b6bTable();
         }
     }
 
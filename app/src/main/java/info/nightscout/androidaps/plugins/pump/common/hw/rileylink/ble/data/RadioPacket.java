@@ -38,7 +38,8 @@ public class RadioPacket {
                 return pkt;
             }
 
-            case FourByteSixByteLocal: {
+            case FourByteSixByteLocal:
+            case FourByteSixByteLocalTable: {
                 byte[] withCRC = getWithCRC();
 
                 byte[] encoded = RileyLinkUtil.getEncoding4b6b().encode4b6b(withCRC);
@@ -106,7 +106,8 @@ public class RadioResponse {
                 }
                     break;
 
-                case FourByteSixByteLocal: {
+                case FourByteSixByteLocal:
+                case FourByteSixByteLocalTable: {
                     byte[] decodeThis = RileyLinkUtil.getEncoding4b6b().decode4b6b(encodedPayload);
 
                     if (decodeThis != null && decodeThis.length > 2) {
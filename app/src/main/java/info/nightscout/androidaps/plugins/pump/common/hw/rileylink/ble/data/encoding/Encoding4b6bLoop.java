@@ -36,7 +36,9 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
      */
     public byte[] encode4b6b(byte[] data) {
 
-        List<Byte> buffer = new ArrayList<Byte>();
+        // 2 input bytes produce 3 output bytes, odd final byte produces 2 output bytes
+        byte[] buffer = new byte[3 * (data.length / 2) + 2 * (data.length % 2)];
+        int index = 0;
         int bitAccumulator = 0x0;
         int bitcount = 0;
 
@@ -57,7 +59,7 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
             bitcount += 6;
 
             while (bitcount >= 8) {
-                buffer.add((byte)((bitAccumulator >> (bitcount - 8)) & 0xff));
+                buffer[index++] = (byte)((bitAccumulator >> (bitcount - 8)) & 0xff);
                 bitcount -= 8;
                 bitAccumulator &= (0xffff >> (16 - bitcount));
             }
@@ -65,10 +67,10 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
 
         if (bitcount > 0) {
             bitAccumulator <<= (8 - bitcount);
-            buffer.add((byte)((bitAccumulator | 0x5) & 0xff));
+            buffer[index] = (byte)((bitAccumulator | 0x5) & 0xff);
         }
 
-        return ByteUtil.getByteArrayFromList(buffer);
+        return buffer;
     }
 
 
@@ -0,0 +1,125 @@
+package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkBLEError;
+import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
+
+/**
+ * Same encoding as Encoding4b6bGeoff, but working directly on byte arrays: output is allocated
+ * once in its final size and 6 bit codes are decoded with 64 entry lookup table.
+ * Error description is created only when packet can't be decoded.
+ */
+
+public class Encoding4b6bTable extends Encoding4b6bAbstract {
+
+    public static final Logger LOG = LoggerFactory.getLogger(Encoding4b6bTable.class);
+
+    // 6 bit code -> 4 bit value, -1 for invalid codes
+    private static final byte[] decode4b6bTable = new byte[64];
+
+    static {
+        Arrays.fill(decode4b6bTable, (byte) -1);
+        for (int i = 0; i < encode4b6bList.length; i++) {
+            decode4b6bTable[encode4b6bList[i]] = (byte) i;
+        }
+    }
+
+
+    public byte[] encode4b6b(byte[] data) {
+        int n = data.length;
+        // 2 input bytes produce 3 output bytes, odd final byte produces 2 output bytes
+        byte[] out = new byte[3 * (n / 2) + 2 * (n % 2)];
+
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            int a = encode4b6bList[(data[i] >> 4) & 0x0f];
+            int b = encode4b6bList[data[i] & 0x0f];
+
+            if ((i & 1) == 0) {
+                out[j++] = (byte) ((a << 2) | (b >> 4));
+                // low 4 bits of b are completed by next byte or by 0x5 end marker
+                out[j] = (byte) ((b & 0x0f) << 4 | 0x05);
+            } else {
+                out[j] = (byte) ((out[j] & 0xf0) | (a >> 2));
+                j++;
+                out[j++] = (byte) (((a & 0x03) << 6) | b);
+            }
+        }
+
+        return out;
+    }
+
+
+    public byte[] decode4b6b(byte[] raw) throws RileyLinkCommunicationException {
+
+        byte[] out = new byte[raw.length * 2 / 3];
+        int outLength = 0;
+
+        int availableBits = 0;
+        int codingErrors = 0;
+        int x = 0;
+        StringBuilder errorMessageBuilder = null;
+
+        for (int i = 0; i < raw.length; i++) {
+            x = (x << 8) | (raw[i] & 0xff);
+            availableBits += 8;
+
+            if (availableBits >= 12) {
+                int highcode = (x >> (availableBits - 6)) & 0x3F;
+                int lowcode = (x >> (availableBits - 12)) & 0x3F;
+                int highIndex = decode4b6bTable[highcode];
+                int lowIndex = decode4b6bTable[lowcode];
+
+                if ((highIndex >= 0) && (lowIndex >= 0)) {
+                    out[outLength++] = (byte) ((highIndex << 4) | lowIndex);
+                } else {
+                    if (errorMessageBuilder == null)
+                        errorMessageBuilder = createErrorMessageBuilder(raw);
+                    errorMessageBuilder.append(String.format(
+                            "decode4b6b: i=%d,x=%08X, coding error: highcode=0x%02X, lowcode=0x%02X, %d bits remaining.\n",
+                            i, x, highcode, lowcode, availableBits));
+                    codingErrors++;
+                }
+
+                availableBits -= 12;
+                x = x & (0x0000ffff >> (16 - availableBits));
+            }
+        }
+
+        // 4 remaining bits are allowed only as end marker
+        if (availableBits != 0 && !((availableBits == 4) && (x == 0x05))) {
+            if (errorMessageBuilder == null)
+                errorMessageBuilder = createErrorMessageBuilder(raw);
+            errorMessageBuilder.append("decode4b6b: failed clean decode -- extra bits available (not marker)("
+                    + availableBits + ")\n");
+            codingErrors++;
+        }
+
+        if (codingErrors > 0) {
+            errorMessageBuilder.append("decode4b6b: " + codingErrors + " coding errors encountered.");
+            writeError(LOG, raw, errorMessageBuilder.toString());
+            throw new RileyLinkCommunicationException(RileyLinkBLEError.CodingErrors, errorMessageBuilder.toString());
+        }
+
+        return outLength == out.length ? out : Arrays.copyOf(out, outLength);
+    }
+
+
+    private StringBuilder createErrorMessageBuilder(byte[] raw) {
+        StringBuilder errorMessageBuilder = new StringBuilder();
+
+        errorMessageBuilder.append("Input data: " + ByteUtil.shortHexString(raw) + "\n");
+
+        if ((raw.length % 2) != 0) {
+            errorMessageBuilder.append("Warn: odd number of bytes.\n");
+        }
+
+        return errorMessageBuilder;
+    }
+
+}
@@ -12,6 +12,7 @@ public enum RileyLinkEncodingType {
     Manchester(0x01, null), // Manchester encoding on RL (for Omnipod)
     FourByteSixByteRileyLink(0x02, R.string.key_medtronic_pump_encoding_4b6b_rileylink), // 4b6b encoding on RL (for Medtronic)
     FourByteSixByteLocal(0x00, R.string.key_medtronic_pump_encoding_4b6b_local), // No encoding on RL, but 4b6b encoding in code
+    FourByteSixByteLocalTable(0x00, R.string.key_medtronic_pump_encoding_4b6b_local_table), // No encoding on RL, 4b6b encoding in code with lookup tables
     ;
 
     public byte value;
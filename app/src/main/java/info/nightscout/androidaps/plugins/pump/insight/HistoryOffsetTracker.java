@@ -0,0 +1,74 @@
+package info.nightscout.androidaps.plugins.pump.insight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DateTimeChangedEvent;
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DefaultDateTimeSetEvent;
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.HistoryEvent;
+
+/**
+ * Splits history read forward in chunks into segments between pump clock resets and keeps pump time offset
+ * valid at the end of stored events.
+ * Events are stored as soon as offset is known. After a reset offset is unknown, so events are kept until
+ * the end of history and offset is calculated back from current pump time. Events between two resets
+ * can't be dated and are dropped.
+ */
+class HistoryOffsetTracker {
+
+    interface Storage {
+        // events in chronological order, stored together with position, returns pump time offset after last event
+        long storeEvents(List<HistoryEvent> historyEvents, long position, long startTimeOffset) throws Exception;
+
+        void storePosition(long position, Long timeOffset) throws Exception;
+
+        long getTimeChange(DateTimeChangedEvent event);
+    }
+
+    private final Storage storage;
+    private final List<HistoryEvent> pendingEvents = new ArrayList<>();
+    private Long timeOffset;
+    private long lastPosition;
+
+    HistoryOffsetTracker(Storage storage, long position, Long timeOffset) {
+        this.storage = storage;
+        this.lastPosition = position;
+        this.timeOffset = timeOffset;
+    }
+
+    void processChunk(List<HistoryEvent> historyEvents) throws Exception {
+        if (historyEvents.size() == 0) return;
+        Collections.sort(historyEvents);
+        lastPosition = historyEvents.get(historyEvents.size() - 1).getEventPosition();
+        int segmentStart = 0;
+        for (int i = 0; i < historyEvents.size(); i++) {
+            if (!(historyEvents.get(i) instanceof DefaultDateTimeSetEvent)) continue;
+            long resetPosition = historyEvents.get(i).getEventPosition();
+            if (timeOffset != null && i > segmentStart)
+                storage.storeEvents(historyEvents.subList(segmentStart, i), resetPosition, timeOffset);
+            storage.storePosition(resetPosition, null);
+            timeOffset = null;
+            pendingEvents.clear();
+            segmentStart = i + 1;
+        }
+        List<HistoryEvent> lastSegment = historyEvents.subList(segmentStart, historyEvents.size());
+        if (timeOffset != null)
+            timeOffset = storage.storeEvents(lastSegment, lastPosition, timeOffset);
+        else pendingEvents.addAll(lastSegment);
+    }
+
+    void finish(long currentTimeOffset) throws Exception {
+        if (timeOffset == null && pendingEvents.size() > 0) {
+            long startTimeOffset = currentTimeOffset;
+            for (HistoryEvent historyEvent : pendingEvents)
+                if (historyEvent instanceof DateTimeChangedEvent)
+                    startTimeOffset -= storage.getTimeChange((DateTimeChangedEvent) historyEvent);
+            storage.storeEvents(pendingEvents, lastPosition, startTimeOffset);
+            pendingEvents.clear();
+        }
+        // offset carried over events is replaced by current one, so pump clock drift doesn't add up
+        storage.storePosition(lastPosition, currentTimeOffset);
+        timeOffset = currentTimeOffset;
+    }
+}
@@ -15,6 +15,7 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -65,7 +66,6 @@ import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.BolusProgrammedEvent;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.CannulaFilledEvent;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DateTimeChangedEvent;
-import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DefaultDateTimeSetEvent;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.EndOfTBREvent;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.HistoryEvent;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.OccurrenceOfAlertEvent;
@@ -103,6 +103,7 @@ import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetPumpS
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetTotalDailyDoseMessage;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.ResetPumpStatusRegisterMessage;
 import info.nightscout.androidaps.plugins.pump.insight.connection_service.InsightConnectionService;
+import info.nightscout.androidaps.plugins.pump.insight.connection_service.MessageRequest;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightBolusID;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightHistoryOffset;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightPumpID;
@@ -141,6 +142,8 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
     private InsightAlertService alertService;
     private InsightConnectionService connectionService;
     private long timeOffset;
+    // actions of history events which must not run before their transaction is committed, in order of events
+    private final List<Runnable> afterCommit = new ArrayList<>();
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder binder) {
@@ -1127,37 +1130,21 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
         try {
             PumpTime pumpTime = connectionService.requestMessage(new GetDateTimeMessage()).await().getPumpTime();
             String pumpSerial = connectionService.getPumpSystemIdentification().getSerialNumber();
-            timeOffset = Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis() - parseDate(pumpTime.getYear(),
+            long currentTimeOffset = Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis() - parseDate(pumpTime.getYear(),
                     pumpTime.getMonth(), pumpTime.getDay(), pumpTime.getHour(), pumpTime.getMinute(), pumpTime.getSecond());
             InsightHistoryOffset historyOffset = MainApp.getDbHelper().getInsightHistoryOffset(pumpSerial);
             try {
-                List<HistoryEvent> historyEvents = new ArrayList<>();
                 if (historyOffset == null) {
                     StartReadingHistoryMessage startMessage = new StartReadingHistoryMessage();
                     startMessage.setDirection(HistoryReadingDirection.BACKWARD);
                     startMessage.setOffset(0xFFFFFFFF);
                     connectionService.requestMessage(startMessage).await();
-                    historyEvents = connectionService.requestMessage(new ReadHistoryEventsMessage()).await().getHistoryEvents();
-                } else {
-                    StartReadingHistoryMessage startMessage = new StartReadingHistoryMessage();
-                    startMessage.setDirection(HistoryReadingDirection.FORWARD);
-                    startMessage.setOffset(historyOffset.offset + 1);
-                    connectionService.requestMessage(startMessage).await();
-                    while (true) {
-                        List<HistoryEvent> newEvents = connectionService.requestMessage(new ReadHistoryEventsMessage()).await().getHistoryEvents();
-                        if (newEvents.size() == 0) break;
-                        historyEvents.addAll(newEvents);
+                    List<HistoryEvent> historyEvents = connectionService.requestMessage(new ReadHistoryEventsMessage()).await().getHistoryEvents();
+                    if (historyEvents.size() > 0) {
+                        Collections.sort(historyEvents);
+                        storeHistoryOffset(pumpSerial, historyEvents.get(historyEvents.size() - 1).getEventPosition(), currentTimeOffset);
                     }
-                }
-                Collections.sort(historyEvents);
-                Collections.reverse(historyEvents);
-                if (historyOffset != null) processHistoryEvents(pumpSerial, historyEvents);
-                if (historyEvents.size() > 0) {
-                    historyOffset = new InsightHistoryOffset();
-                    historyOffset.pumpSerial = pumpSerial;
-                    historyOffset.offset = historyEvents.get(0).getEventPosition();
-                    MainApp.getDbHelper().createOrUpdate(historyOffset);
-                }
+                } else readHistoryForward(pumpSerial, historyOffset, currentTimeOffset);
             } catch (AppLayerErrorException e) {
                 log.info("Exception while reading history: " + e.getClass().getCanonicalName() + " (" + e.getErrorCode() + ")");
             } catch (InsightException e) {
@@ -1180,13 +1167,70 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
         new Handler(Looper.getMainLooper()).post(() -> RxBus.INSTANCE.send(new EventRefreshOverview("LocalInsightPlugin::readHistory")));
     }
 
+    /**
+     * Reads history forward from stored position. Next chunk is requested before received one is processed
+     * and every chunk is stored in one transaction together with new position, so interrupted read continues
+     * where it stopped instead of from the beginning.
+     */
+    private void readHistoryForward(String pumpSerial, InsightHistoryOffset historyOffset, long currentTimeOffset) throws Exception {
+        StartReadingHistoryMessage startMessage = new StartReadingHistoryMessage();
+        startMessage.setDirection(HistoryReadingDirection.FORWARD);
+        startMessage.setOffset(historyOffset.offset + 1);
+        connectionService.requestMessage(startMessage).await();
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(new HistoryOffsetTracker.Storage() {
+            @Override
+            public long storeEvents(List<HistoryEvent> historyEvents, long position, long startTimeOffset) throws Exception {
+                return storeHistoryEvents(pumpSerial, historyEvents, position, startTimeOffset);
+            }
+
+            @Override
+            public void storePosition(long position, Long timeOffset) {
+                storeHistoryOffset(pumpSerial, position, timeOffset);
+            }
+
+            @Override
+            public long getTimeChange(DateTimeChangedEvent event) {
+                return LocalInsightPlugin.this.getTimeChange(event);
+            }
+        }, historyOffset.offset, historyOffset.timeOffset);
+        MessageRequest<ReadHistoryEventsMessage> request = connectionService.requestMessage(new ReadHistoryEventsMessage());
+        while (true) {
+            List<HistoryEvent> historyEvents = request.await().getHistoryEvents();
+            if (historyEvents.size() == 0) break;
+            request = connectionService.requestMessage(new ReadHistoryEventsMessage());
+            tracker.processChunk(historyEvents);
+        }
+        tracker.finish(currentTimeOffset);
+    }
+
+    // events in chronological order, returns pump time offset after last event
+    private long storeHistoryEvents(String serial, List<HistoryEvent> historyEvents, long position, long startTimeOffset) throws SQLException {
+        afterCommit.clear();
+        long endTimeOffset = MainApp.getDbHelper().callInTransaction(() -> {
+            timeOffset = startTimeOffset;
+            processHistoryEvents(serial, historyEvents);
+            storeHistoryOffset(serial, position, timeOffset);
+            return timeOffset;
+        });
+        // treatments, NS uploads and their events are not rolled back, so they follow only committed chunk
+        for (Runnable action : afterCommit) action.run();
+        afterCommit.clear();
+        return endTimeOffset;
+    }
+
+    private void storeHistoryOffset(String serial, long position, Long timeOffset) {
+        InsightHistoryOffset historyOffset = new InsightHistoryOffset();
+        historyOffset.pumpSerial = serial;
+        historyOffset.offset = position;
+        historyOffset.timeOffset = timeOffset;
+        MainApp.getDbHelper().createOrUpdate(historyOffset);
+    }
+
     private void processHistoryEvents(String serial, List<HistoryEvent> historyEvents) {
         List<TemporaryBasal> temporaryBasals = new ArrayList<>();
         List<InsightPumpID> pumpStartedEvents = new ArrayList<>();
         for (HistoryEvent historyEvent : historyEvents)
-            if (!processHistoryEvent(serial, temporaryBasals, pumpStartedEvents, historyEvent))
-                break;
-        Collections.reverse(temporaryBasals);
+            processHistoryEvent(serial, temporaryBasals, pumpStartedEvents, historyEvent);
         for (InsightPumpID pumpID : pumpStartedEvents) {
             InsightPumpID stoppedEvent = MainApp.getDbHelper().getPumpStoppedEvent(pumpID.pumpSerial, pumpID.timestamp);
             if (stoppedEvent == null || stoppedEvent.eventType.equals("PumpPaused")) continue;
@@ -1202,13 +1246,12 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
         }
         Collections.sort(temporaryBasals, (o1, o2) -> (int) (o1.date - o2.date));
         for (TemporaryBasal temporaryBasal : temporaryBasals)
-            TreatmentsPlugin.getPlugin().addToHistoryTempBasal(temporaryBasal);
+            afterCommit.add(() -> TreatmentsPlugin.getPlugin().addToHistoryTempBasal(temporaryBasal));
     }
 
-    private boolean processHistoryEvent(String serial, List<TemporaryBasal> temporaryBasals, List<InsightPumpID> pumpStartedEvents, HistoryEvent event) {
-        if (event instanceof DefaultDateTimeSetEvent) return false;
-        else if (event instanceof DateTimeChangedEvent)
-            processDateTimeChangedEvent((DateTimeChangedEvent) event);
+    private void processHistoryEvent(String serial, List<TemporaryBasal> temporaryBasals, List<InsightPumpID> pumpStartedEvents, HistoryEvent event) {
+        if (event instanceof DateTimeChangedEvent)
+            timeOffset += getTimeChange((DateTimeChangedEvent) event);
         else if (event instanceof CannulaFilledEvent)
             processCannulaFilledEvent((CannulaFilledEvent) event);
         else if (event instanceof TotalDailyDoseEvent)
@@ -1229,13 +1272,12 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             processBolusDeliveredEvent(serial, (BolusDeliveredEvent) event);
         else if (event instanceof OccurrenceOfAlertEvent)
             processOccurrenceOfAlertEvent((OccurrenceOfAlertEvent) event);
-        return true;
     }
 
-    private void processDateTimeChangedEvent(DateTimeChangedEvent event) {
+    private long getTimeChange(DateTimeChangedEvent event) {
         long timeAfter = parseDate(event.getEventYear(), event.getEventMonth(), event.getEventDay(), event.getEventHour(), event.getEventMinute(), event.getEventSecond());
         long timeBefore = parseDate(event.getBeforeYear(), event.getBeforeMonth(), event.getBeforeDay(), event.getBeforeHour(), event.getBeforeMinute(), event.getBeforeSecond());
-        timeOffset -= timeAfter - timeBefore;
+        return timeAfter - timeBefore;
     }
 
     private void processCannulaFilledEvent(CannulaFilledEvent event) {
@@ -1367,7 +1409,7 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             detailedBolusInfo.source = Source.PUMP;
             detailedBolusInfo.pumpId = bolusID.id;
             detailedBolusInfo.insulin = event.getImmediateAmount();
-            TreatmentsPlugin.getPlugin().addToHistoryTreatment(detailedBolusInfo, true);
+            afterCommit.add(() -> TreatmentsPlugin.getPlugin().addToHistoryTreatment(detailedBolusInfo, true));
         }
         if ((event.getBolusType() == BolusType.EXTENDED || event.getBolusType() == BolusType.MULTIWAVE)) {
             ExtendedBolus extendedBolus = new ExtendedBolus();
@@ -1377,7 +1419,7 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             extendedBolus.insulin = event.getExtendedAmount();
             extendedBolus.pumpId = bolusID.id;
             if (ProfileFunctions.getInstance().getProfile(extendedBolus.date) != null)
-                TreatmentsPlugin.getPlugin().addToHistoryExtendedBolus(extendedBolus);
+                afterCommit.add(() -> TreatmentsPlugin.getPlugin().addToHistoryExtendedBolus(extendedBolus));
         }
     }
 
@@ -1401,17 +1443,21 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             detailedBolusInfo.source = Source.PUMP;
             detailedBolusInfo.pumpId = bolusID.id;
             detailedBolusInfo.insulin = event.getImmediateAmount();
-            TreatmentsPlugin.getPlugin().addToHistoryTreatment(detailedBolusInfo, true);
+            afterCommit.add(() -> TreatmentsPlugin.getPlugin().addToHistoryTreatment(detailedBolusInfo, true));
         }
         if (event.getBolusType() == BolusType.EXTENDED || event.getBolusType() == BolusType.MULTIWAVE) {
             if (event.getDuration() == 0) {
-                ExtendedBolus extendedBolus = MainApp.getDbHelper().getExtendedBolusByPumpId(bolusID.id);
-                if (extendedBolus != null) {
-                    final String _id = extendedBolus._id;
-                    if (NSUpload.isIdValid(_id)) NSUpload.removeCareportalEntryFromNS(_id);
-                    else UploadQueue.removeID("dbAdd", _id);
-                    MainApp.getDbHelper().delete(extendedBolus);
-                }
+                // extended bolus may be added by earlier event of this chunk, which is deferred too
+                final long pumpId = bolusID.id;
+                afterCommit.add(() -> {
+                    ExtendedBolus extendedBolus = MainApp.getDbHelper().getExtendedBolusByPumpId(pumpId);
+                    if (extendedBolus != null) {
+                        final String _id = extendedBolus._id;
+                        if (NSUpload.isIdValid(_id)) NSUpload.removeCareportalEntryFromNS(_id);
+                        else UploadQueue.removeID("dbAdd", _id);
+                        MainApp.getDbHelper().delete(extendedBolus);
+                    }
+                });
             } else {
                 ExtendedBolus extendedBolus = new ExtendedBolus();
                 extendedBolus.date = bolusID.timestamp;
@@ -1420,7 +1466,7 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
                 extendedBolus.insulin = event.getExtendedAmount();
                 extendedBolus.pumpId = bolusID.id;
                 if (ProfileFunctions.getInstance().getProfile(extendedBolus.date) != null)
-                    TreatmentsPlugin.getPlugin().addToHistoryExtendedBolus(extendedBolus);
+                    afterCommit.add(() -> TreatmentsPlugin.getPlugin().addToHistoryExtendedBolus(extendedBolus));
             }
         }
     }
@@ -1540,7 +1586,7 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             careportalEvent.eventType = CareportalEvent.NOTE;
             careportalEvent.json = data.toString();
             MainApp.getDbHelper().createOrUpdate(careportalEvent);
-            NSUpload.uploadCareportalEntryToNS(data);
+            afterCommit.add(() -> NSUpload.uploadCareportalEntryToNS(data));
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -1574,7 +1620,7 @@ public class LocalInsightPlugin extends PluginBase implements PumpInterface, Con
             careportalEvent.eventType = event;
             careportalEvent.json = data.toString();
             MainApp.getDbHelper().createOrUpdate(careportalEvent);
-            NSUpload.uploadCareportalEntryToNS(data);
+            afterCommit.add(() -> NSUpload.uploadCareportalEntryToNS(data));
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
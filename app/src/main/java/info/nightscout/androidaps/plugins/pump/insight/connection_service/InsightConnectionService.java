@@ -79,6 +79,7 @@ import info.nightscout.androidaps.plugins.pump.insight.utils.InputStreamReader;
 import info.nightscout.androidaps.plugins.pump.insight.utils.Nonce;
 import info.nightscout.androidaps.plugins.pump.insight.utils.OutputStreamWriter;
 import info.nightscout.androidaps.plugins.pump.insight.utils.PairingDataStorage;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.CipherSession;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.Cryptograph;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.DerivedKeys;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.KeyPair;
@@ -97,6 +98,7 @@ public class InsightConnectionService extends Service implements ConnectionEstab
     private List<ExceptionCallback> exceptionCallbacks = new ArrayList<>();
     private LocalBinder localBinder = new LocalBinder();
     private PairingDataStorage pairingDataStorage;
+    private CipherSession cipherSession;
     private InsightState state;
     private PowerManager.WakeLock wakeLock;
     private DelayedActionThread disconnectTimer;
@@ -455,7 +457,7 @@ public class InsightConnectionService extends Service implements ConnectionEstab
         this.buffer.putBytes(buffer, bytesRead);
         try {
             while (SatlMessage.hasCompletePacket(this.buffer)) {
-                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), pairingDataStorage.getIncomingKey());
+                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), getCipherSession().getIncoming());
                 if (pairingDataStorage.getIncomingKey() != null
                         && pairingDataStorage.getLastNonceReceived() != null
                         && !pairingDataStorage.getLastNonceReceived().isSmallerThan(satlMessage.getNonce())) {
@@ -467,6 +469,15 @@ public class InsightConnectionService extends Service implements ConnectionEstab
         }
     }
 
+    // engines are keyed again only when pairing changes the keys
+    private CipherSession getCipherSession() {
+        byte[] incomingKey = pairingDataStorage.getIncomingKey();
+        byte[] outgoingKey = pairingDataStorage.getOutgoingKey();
+        if (cipherSession == null || !cipherSession.hasKeys(incomingKey, outgoingKey))
+            cipherSession = new CipherSession(incomingKey, outgoingKey);
+        return cipherSession;
+    }
+
     private byte[] prepareSatlMessage(SatlMessage satlMessage) {
         satlMessage.setCommID(pairingDataStorage.getCommId());
         Nonce nonce = pairingDataStorage.getLastNonceSent();
@@ -475,7 +486,7 @@ public class InsightConnectionService extends Service implements ConnectionEstab
             pairingDataStorage.setLastNonceSent(nonce);
             satlMessage.setNonce(nonce);
         }
-        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), pairingDataStorage.getOutgoingKey());
+        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), getCipherSession().getOutgoing());
         if (timeoutTimer != null) timeoutTimer.interrupt();
         timeoutTimer = DelayedActionThread.runDelayed("TimeoutTimer", RESPONSE_TIMEOUT, () -> {
             timeoutTimer = null;
@@ -13,4 +13,8 @@ public class InsightHistoryOffset {
 
     @DatabaseField
     public long offset;
+
+    // pump time offset valid at offset, null when unknown
+    @DatabaseField
+    public Long timeOffset;
 }
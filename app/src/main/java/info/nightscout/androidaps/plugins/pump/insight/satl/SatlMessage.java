@@ -1,7 +1,5 @@
 package info.nightscout.androidaps.plugins.pump.insight.satl;
 
-import java.util.Arrays;
-
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.IncompatibleSatlVersionException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.InvalidMacTrailerException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.InvalidNonceException;
@@ -12,6 +10,7 @@ import info.nightscout.androidaps.plugins.pump.insight.exceptions.InvalidSatlCom
 import info.nightscout.androidaps.plugins.pump.insight.ids.SatlCommandIDs;
 import info.nightscout.androidaps.plugins.pump.insight.utils.ByteBuf;
 import info.nightscout.androidaps.plugins.pump.insight.utils.Nonce;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.CipherSession;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.Cryptograph;
 
 public abstract class SatlMessage {
@@ -31,10 +30,10 @@ public abstract class SatlMessage {
 
     }
 
-    public ByteBuf serialize(Class<? extends SatlMessage> clazz, byte[] key) {
+    public ByteBuf serialize(Class<? extends SatlMessage> clazz, CipherSession.KeyedCipher cipher) {
         ByteBuf byteBuf;
-        if (nonce == null || key == null) byteBuf = serializeCRC(clazz);
-        else byteBuf = serializeCTR(nonce.getProductionalBytes(), key, SatlCommandIDs.IDS.getID(clazz));
+        if (nonce == null || cipher == null) byteBuf = serializeCRC(clazz);
+        else byteBuf = serializeCTR(nonce.getProductionalBytes(), cipher, SatlCommandIDs.IDS.getID(clazz));
         satlContent = byteBuf.getBytes(8, byteBuf.getSize() - 16);
         return byteBuf;
     }
@@ -57,34 +56,37 @@ public abstract class SatlMessage {
         return byteBuf;
     }
 
-    private ByteBuf serializeCTR(ByteBuf nonce, byte[] key, byte commandId) {
-        ByteBuf data = getData();
-        ByteBuf encryptedData = ByteBuf.from(Cryptograph.encryptDataCTR(data.getBytes(), key, nonce.getBytes()));
-        int length = 29 + encryptedData.getSize();
+    private ByteBuf serializeCTR(ByteBuf nonce, CipherSession.KeyedCipher cipher, byte commandId) {
+        byte[] data = getData().getBytes();
+        byte[] nonceBytes = nonce.getBytes();
+        int length = 29 + data.length;
         ByteBuf byteBuf = new ByteBuf(length + 8);
         byteBuf.putUInt32LE(PREAMBLE);
         byteBuf.putUInt16LE(length);
         byteBuf.putUInt16LE(~length);
         byteBuf.putByte(VERSION);
         byteBuf.putByte(commandId);
-        byteBuf.putUInt16LE(encryptedData.getSize());
+        byteBuf.putUInt16LE(data.length);
         byteBuf.putUInt32LE(commID);
-        byteBuf.putByteBuf(nonce);
-        byteBuf.putByteBuf(encryptedData);
-        byteBuf.putBytes(Cryptograph.produceCCMTag(byteBuf.getBytes(16, 13), data.getBytes(), byteBuf.getBytes(8, 21), key));
+        byteBuf.putBytes(nonceBytes);
+        byte[] trailer = new byte[CipherSession.KeyedCipher.TAG_SIZE];
+        cipher.produceCCMTag(nonceBytes, data, byteBuf.getBytes(8, 21), trailer, 0);
+        cipher.processCTR(nonceBytes, data, 0, data.length);
+        byteBuf.putBytes(data);
+        byteBuf.putBytes(trailer);
         return byteBuf;
     }
 
-    public static SatlMessage deserialize(ByteBuf data, Nonce lastNonce, byte[] key) throws InvalidMacTrailerException, InvalidSatlCRCException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
+    public static SatlMessage deserialize(ByteBuf data, Nonce lastNonce, CipherSession.KeyedCipher cipher) throws InvalidMacTrailerException, InvalidSatlCRCException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
         SatlMessage satlMessage;
         byte[] satlContent = data.getBytes(8, data.getSize() - 16);
-        if (key == null) satlMessage = deserializeCRC(data);
-        else satlMessage = deserializeCTR(data, lastNonce, key);
+        if (cipher == null) satlMessage = deserializeCRC(data);
+        else satlMessage = deserializeCTR(data, lastNonce, cipher);
         satlMessage.setSatlContent(satlContent);
         return satlMessage;
     }
 
-    private static SatlMessage deserializeCTR(ByteBuf data, Nonce lastNonce, byte[] key) throws InvalidMacTrailerException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
+    private static SatlMessage deserializeCTR(ByteBuf data, Nonce lastNonce, CipherSession.KeyedCipher cipher) throws InvalidMacTrailerException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
         long preamble = data.readUInt32LE();
         int packetLength = data.readUInt16LE();
         int packetLengthXOR = data.readUInt16LE() ^ 65535;
@@ -98,8 +100,8 @@ public abstract class SatlMessage {
         byte[] payload = data.readBytes(dataLength);
         byte[] trailer = data.readBytes(8);
         Nonce parsedNonce = Nonce.fromProductionalBytes(nonce);
-        payload = Cryptograph.encryptDataCTR(payload, key, nonce);
-        if (!Arrays.equals(trailer, Cryptograph.produceCCMTag(nonce, payload, header, key))) throw new InvalidMacTrailerException();
+        cipher.processCTR(nonce, payload, 0, payload.length);
+        if (!cipher.verifyCCMTag(nonce, payload, header, trailer)) throw new InvalidMacTrailerException();
         if (!lastNonce.isSmallerThan(parsedNonce)) throw new InvalidNonceException();
         if (preamble != PREAMBLE) throw new InvalidPreambleException();
         if (packetLength != packetLengthXOR) throw new InvalidPacketLengthsException();
@@ -0,0 +1,114 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils.crypto;
+
+import org.spongycastle.crypto.engines.TwofishEngine;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.util.Arrays;
+
+/**
+ * Twofish engines keyed once per connection for incoming and outgoing SATL messages.
+ * CTR encryption works in place and CCM tag is calculated in scratch buffers, so data messages
+ * don't create engines or intermediate arrays. Not thread safe, used under lock of the connection service.
+ */
+public class CipherSession {
+
+    private final byte[] incomingKey;
+    private final byte[] outgoingKey;
+    private final KeyedCipher incoming;
+    private final KeyedCipher outgoing;
+
+    public CipherSession(byte[] incomingKey, byte[] outgoingKey) {
+        this.incomingKey = incomingKey;
+        this.outgoingKey = outgoingKey;
+        incoming = incomingKey == null ? null : new KeyedCipher(incomingKey);
+        outgoing = outgoingKey == null ? null : new KeyedCipher(outgoingKey);
+    }
+
+    public boolean hasKeys(byte[] incomingKey, byte[] outgoingKey) {
+        return Arrays.equals(this.incomingKey, incomingKey) && Arrays.equals(this.outgoingKey, outgoingKey);
+    }
+
+    public KeyedCipher getIncoming() {
+        return incoming;
+    }
+
+    public KeyedCipher getOutgoing() {
+        return outgoing;
+    }
+
+    public static class KeyedCipher {
+
+        private static final int BLOCK_SIZE = 16;
+        public static final int TAG_SIZE = 8;
+
+        private final TwofishEngine engine = new TwofishEngine();
+        private final byte[] counterBlock = new byte[BLOCK_SIZE];
+        private final byte[] keyStream = new byte[BLOCK_SIZE];
+        private final byte[] macState = new byte[BLOCK_SIZE];
+        private final byte[] tag = new byte[TAG_SIZE];
+        private byte[] headerBuffer = new byte[32];
+
+        private KeyedCipher(byte[] key) {
+            engine.init(true, new KeyParameter(key));
+        }
+
+        private void setPrimitive(byte headerByte, byte[] nonce, int number) {
+            counterBlock[0] = headerByte;
+            System.arraycopy(nonce, 0, counterBlock, 1, nonce.length);
+            counterBlock[14] = (byte) (number >> 8);
+            counterBlock[15] = (byte) number;
+        }
+
+        // CTR mode is symmetric, same call encrypts and decrypts
+        public void processCTR(byte[] nonce, byte[] data, int offset, int length) {
+            for (int position = 0; position < length; position += BLOCK_SIZE) {
+                setPrimitive((byte) 0x01, nonce, position / BLOCK_SIZE + 1);
+                engine.processBlock(counterBlock, 0, keyStream, 0);
+                int count = Math.min(BLOCK_SIZE, length - position);
+                for (int i = 0; i < count; i++)
+                    data[offset + position + i] ^= keyStream[i];
+            }
+        }
+
+        // CBC-MAC of data zero padded to block size
+        private void updateMac(byte[] data, int offset, int length) {
+            for (int position = 0; position < length; position += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, length - position);
+                for (int i = 0; i < count; i++)
+                    macState[i] ^= data[offset + position + i];
+                engine.processBlock(macState, 0, macState, 0);
+            }
+        }
+
+        private void calculateCCMTag(byte[] nonce, byte[] payload, int payloadOffset, int payloadLength, byte[] header) {
+            setPrimitive((byte) 0x59, nonce, payloadLength);
+            engine.processBlock(counterBlock, 0, macState, 0);
+
+            if (headerBuffer.length < header.length + 2)
+                headerBuffer = new byte[header.length + 2];
+            headerBuffer[0] = (byte) (header.length >> 8);
+            headerBuffer[1] = (byte) header.length;
+            System.arraycopy(header, 0, headerBuffer, 2, header.length);
+            updateMac(headerBuffer, 0, header.length + 2);
+            updateMac(payload, payloadOffset, payloadLength);
+
+            setPrimitive((byte) 0x01, nonce, 0);
+            engine.processBlock(counterBlock, 0, keyStream, 0);
+            for (int i = 0; i < TAG_SIZE; i++)
+                tag[i] = (byte) (macState[i] ^ keyStream[i]);
+        }
+
+        public void produceCCMTag(byte[] nonce, byte[] payload, byte[] header, byte[] output, int outputOffset) {
+            calculateCCMTag(nonce, payload, 0, payload.length, header);
+            System.arraycopy(tag, 0, output, outputOffset, TAG_SIZE);
+        }
+
+        public boolean verifyCCMTag(byte[] nonce, byte[] payload, byte[] header, byte[] trailer) {
+            calculateCCMTag(nonce, payload, 0, payload.length, header);
+            if (trailer.length != TAG_SIZE) return false;
+            for (int i = 0; i < TAG_SIZE; i++)
+                if (tag[i] != trailer[i]) return false;
+            return true;
+        }
+    }
+}
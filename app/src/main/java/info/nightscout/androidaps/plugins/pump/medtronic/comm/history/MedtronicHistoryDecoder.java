@@ -51,8 +51,8 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
 
     // TODO_ extend this to also use bigger pages (for now we support only 1024 pages)
-    private List<Byte> checkPage(RawHistoryPage page, boolean partial) throws RuntimeException {
-        List<Byte> byteList = new ArrayList<Byte>();
+    // returns number of bytes of page data to decode, -1 if page is invalid
+    private int checkPage(RawHistoryPage page, boolean partial) throws RuntimeException {
 
         // if (!partial && page.getData().length != 1024 /* page.commandType.getRecordLength() */) {
         // LOG.error("Page size is not correct. Size should be {}, but it was {} instead.", 1024,
@@ -63,15 +63,15 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
         if (MedtronicUtil.getMedtronicPumpModel() == null) {
             LOG.error("Device Type is not defined.");
-            return byteList;
+            return 0;
         }
 
         if (page.getData().length != 1024) {
-            return ByteUtil.getListFromByteArray(page.getData());
+            return page.getData().length;
         } else if (page.isChecksumOK()) {
-            return ByteUtil.getListFromByteArray(page.getOnlyData());
+            return 1022; // without CRC
         } else {
-            return null;
+            return -1;
         }
     }
 
@@ -172,8 +172,14 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
 
     private List<T> processPageAndCreateRecords(RawHistoryPage rawHistoryPage, boolean partial) {
-        List<Byte> dataClear = checkPage(rawHistoryPage, partial);
-        List<T> records = createRecords(dataClear);
+        int length = checkPage(rawHistoryPage, partial);
+
+        if (length < 0) {
+            LOG.error("Invalid page, CRC doesn't match.");
+            return new ArrayList<>();
+        }
+
+        List<T> records = createRecords(rawHistoryPage.getData(), length);
 
         for (T record : records) {
             decodeRecord(record);
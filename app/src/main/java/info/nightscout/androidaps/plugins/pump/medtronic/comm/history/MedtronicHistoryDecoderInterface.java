@@ -10,6 +10,7 @@ public interface MedtronicHistoryDecoderInterface<T> {
 
     RecordDecodeStatus decodeRecord(T record);
 
-    List<T> createRecords(List<Byte> dataClear);
+    // records are created from first length bytes of data and reference it, data must not be modified later
+    List<T> createRecords(byte[] data, int length);
 
 }
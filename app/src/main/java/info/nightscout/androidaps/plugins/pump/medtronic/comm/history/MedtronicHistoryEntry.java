@@ -5,8 +5,8 @@ import com.google.gson.annotations.Expose;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
@@ -22,7 +22,10 @@ import info.nightscout.androidaps.plugins.pump.common.utils.StringUtil;
 
 public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInterface {
 
-    protected List<Byte> rawData;
+    // page the record was decoded from, record is rawLength bytes at rawOffset
+    protected byte[] rawData;
+    protected int rawOffset;
+    protected int rawLength;
 
     public static final Logger LOG = LoggerFactory.getLogger(MedtronicHistoryEntry.class);
 
@@ -71,8 +74,8 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
     }
 
 
-    public void setData(List<Byte> listRawData, boolean doNotProcess) {
-        this.rawData = listRawData;
+    public void setData(byte[] data, int offset, int length, boolean doNotProcess) {
+        setRawData(data, offset, length);
 
         // System.out.println("Head: " + sizes[0] + ", dates: " + sizes[1] +
         // ", body=" + sizes[2]);
@@ -81,27 +84,23 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
             return;
 
         head = new byte[getHeadLength() - 1];
-        for (int i = 1; i < (getHeadLength()); i++) {
-            head[i - 1] = listRawData.get(i);
-        }
+        System.arraycopy(data, offset + 1, head, 0, head.length);
 
         if (getDateTimeLength() > 0) {
             datetime = new byte[getDateTimeLength()];
-
-            for (int i = getHeadLength(), j = 0; j < getDateTimeLength(); i++, j++) {
-                datetime[j] = listRawData.get(i);
-            }
+            System.arraycopy(data, offset + getHeadLength(), datetime, 0, datetime.length);
         }
 
         if (getBodyLength() > 0) {
             body = new byte[getBodyLength()];
+            System.arraycopy(data, offset + getHeadLength() + getDateTimeLength(), body, 0, body.length);
+        }
 
-            for (int i = (getHeadLength() + getDateTimeLength()), j = 0; j < getBodyLength(); i++, j++) {
-                body[j] = listRawData.get(i);
-            }
+    }
 
-        }
 
+    public void setData(byte[] data, boolean doNotProcess) {
+        setData(data, 0, data.length, doNotProcess);
     }
 
 
@@ -171,7 +170,7 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
         StringBuilder sb = new StringBuilder();
 
         if (this.DT == null) {
-            LOG.error("DT is null. RawData={}", ByteUtil.getHex(this.rawData));
+            LOG.error("DT is null. RawData={}", ByteUtil.getHex(getRawData()));
         }
 
         sb.append(getToStringStart());
@@ -213,7 +212,7 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
         }
 
         sb.append(", rawData=");
-        sb.append(ByteUtil.shortHexString(this.rawData));
+        sb.append(ByteUtil.shortHexString(getRawData()));
         sb.append("]");
 
         // sb.append(" DT: ");
@@ -231,23 +230,32 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
     public abstract String getToStringStart();
 
 
-    public List<Byte> getRawData() {
-        return rawData;
+    public byte[] getRawData() {
+        return rawData == null ? null : Arrays.copyOfRange(rawData, rawOffset, rawOffset + rawLength);
+    }
+
+
+    public int getRawDataLength() {
+        return rawLength;
     }
 
 
     public byte getRawDataByIndex(int index) {
-        return rawData.get(index);
+        if (index >= rawLength)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return rawData[rawOffset + index];
     }
 
 
     public int getUnsignedRawDataByIndex(int index) {
-        return ByteUtil.convertUnsignedByteToInt(rawData.get(index));
+        return ByteUtil.convertUnsignedByteToInt(getRawDataByIndex(index));
     }
 
 
-    public void setRawData(List<Byte> rawData) {
-        this.rawData = rawData;
+    public void setRawData(byte[] data, int offset, int length) {
+        this.rawData = data;
+        this.rawOffset = offset;
+        this.rawLength = length;
     }
 
 
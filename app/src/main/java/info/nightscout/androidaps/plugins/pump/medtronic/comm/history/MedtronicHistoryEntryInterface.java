@@ -1,7 +1,5 @@
 package info.nightscout.androidaps.plugins.pump.medtronic.comm.history;
 
-import java.util.List;
-
 /**
  * Created by andy on 7/24/18.
  */
@@ -9,7 +7,7 @@ public interface MedtronicHistoryEntryInterface {
 
     String getEntryTypeName();
 
-    void setData(List<Byte> listRawData, boolean doNotProcess);
+    void setData(byte[] data, int offset, int length, boolean doNotProcess);
 
     int getDateLength();
 
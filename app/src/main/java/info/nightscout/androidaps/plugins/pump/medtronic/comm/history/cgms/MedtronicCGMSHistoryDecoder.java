@@ -5,7 +5,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import info.nightscout.androidaps.logging.L;
@@ -120,9 +119,9 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
     }
 
 
-    public List<CGMSHistoryEntry> createRecords(List<Byte> dataClearInput) {
+    public List<CGMSHistoryEntry> createRecords(byte[] dataClearInput, int length) {
 
-        List<Byte> dataClear = reverseList(dataClearInput, Byte.class);
+        byte[] dataClear = reverseArray(dataClearInput, length);
 
         prepareStatistics();
 
@@ -132,7 +131,8 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
 
         // create CGMS entries (without dates)
         do {
-            int opCode = getUnsignedInt(dataClear.get(counter));
+            int recordStart = counter;
+            int opCode = getUnsignedInt(dataClear[counter]);
             counter++;
 
             CGMSHistoryEntryType entryType;
@@ -150,25 +150,24 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
                     pe.setEntryType(CGMSHistoryEntryType.None);
                     pe.setOpCode(opCode);
 
-                    pe.setData(Arrays.asList((byte) opCode), false);
+                    pe.setData(dataClear, recordStart, 1, false);
 
                     outList.add(pe);
                 } else {
                     // System.out.println("OpCode: " + opCode);
 
-                    List<Byte> listRawData = new ArrayList<Byte>();
-                    listRawData.add((byte) opCode);
-
-                    for (int j = 0; j < (entryType.getTotalLength() - 1); j++) {
-                        listRawData.add(dataClear.get(counter));
-                        counter++;
+                    int recordLength = Math.max(1, entryType.getTotalLength());
+                    if (recordStart + recordLength > dataClear.length) {
+                        LOG.error("GlucoseHistoryEntry with code {} is incomplete.", opCode);
+                        break;
                     }
+                    counter = recordStart + recordLength;
 
                     CGMSHistoryEntry pe = new CGMSHistoryEntry();
                     pe.setEntryType(entryType);
 
                     pe.setOpCode(opCode);
-                    pe.setData(listRawData, false);
+                    pe.setData(dataClear, recordStart, recordLength, false);
 
                     // System.out.println("Record: " + pe);
 
@@ -178,12 +177,12 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
                 CGMSHistoryEntry pe = new CGMSHistoryEntry();
                 pe.setEntryType(CGMSHistoryEntryType.GlucoseSensorData);
 
-                pe.setData(Arrays.asList((byte) opCode), false);
+                pe.setData(dataClear, recordStart, 1, false);
 
                 outList.add(pe);
             }
 
-        } while (counter < dataClear.size());
+        } while (counter < dataClear.length);
 
         List<CGMSHistoryEntry> reversedOutList = reverseList(outList, CGMSHistoryEntry.class);
 
@@ -217,6 +216,19 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
     }
 
 
+    // first byte is dropped, same as in reverseList
+    private byte[] reverseArray(byte[] dataClearInput, int length) {
+
+        byte[] outArray = new byte[Math.max(0, length - 1)];
+
+        for (int i = length - 1, j = 0; i > 0; i--, j++) {
+            outArray[j] = dataClearInput[i];
+        }
+
+        return outArray;
+    }
+
+
     private <E> List<E> reverseList(List<E> dataClearInput, Class<E> clazz) {
 
         List<E> outList = new ArrayList<E>();
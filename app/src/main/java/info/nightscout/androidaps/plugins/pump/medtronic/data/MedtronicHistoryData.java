@@ -16,9 +16,12 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
@@ -636,8 +639,10 @@ public class MedtronicHistoryData {
                 addBolus(treatment, null);
             }
         } else {
+            DbEntriesByDate entriesByDate = new DbEntriesByDate(entriesFromHistory);
+
             for (PumpHistoryEntry treatment : entryList) {
-                DbObjectBase treatmentDb = findDbEntry(treatment, entriesFromHistory);
+                DbObjectBase treatmentDb = findDbEntry(treatment, entriesByDate);
                 if (isLogEnabled())
                     LOG.debug("Add Bolus {} - (entryFromDb={}) ", treatment, treatmentDb);
                 if (doubleBolusDebug)
@@ -651,18 +656,18 @@ public class MedtronicHistoryData {
 
     private void filterOutNonInsulinEntries(List<? extends DbObjectBase> entriesFromHistory) {
         // when we try to pair PumpHistory with AAPS treatments, we need to ignore all non-insulin entries
-        List<DbObjectBase> removeList = new ArrayList<>();
+        Set<Object> removeSet = Collections.newSetFromMap(new IdentityHashMap<>());
 
         for (DbObjectBase dbObjectBase : entriesFromHistory) {
 
             Treatment treatment = (Treatment)dbObjectBase;
 
             if (RileyLinkUtil.isSame(treatment.insulin, 0d)) {
-                removeList.add(dbObjectBase);
+                removeSet.add(dbObjectBase);
             }
         }
 
-        entriesFromHistory.removeAll(removeList);
+        removeItems(entriesFromHistory, removeSet);
     }
 
 
@@ -731,11 +736,14 @@ public class MedtronicHistoryData {
 
         if (isCollectionNotEmpty(processList)) {
 
+            Map<Long, DbObjectBase> entriesByPumpId = mapByPumpId(entriesFromHistory);
+            DbEntriesByDate entriesByDate = new DbEntriesByDate(entriesFromHistory);
+
             for (TempBasalProcessDTO tempBasalProcessDTO : processList) {
 
                 if (tempBasalProcessDTO.processOperation == TempBasalProcessDTO.Operation.Edit) {
                     // edit
-                    TemporaryBasal tempBasal = findTempBasalWithPumpId(tempBasalProcessDTO.itemOne.getPumpId(), entriesFromHistory);
+                    TemporaryBasal tempBasal = findTempBasalWithPumpId(tempBasalProcessDTO.itemOne.getPumpId(), entriesByPumpId);
 
                     if (tempBasal != null) {
 
@@ -757,10 +765,10 @@ public class MedtronicHistoryData {
                     TempBasalPair tbr2 = (TempBasalPair) treatment.getDecodedData().get("Object");
                     tbr2.setDurationMinutes(tempBasalProcessDTO.getDuration());
 
-                    TemporaryBasal tempBasal = findTempBasalWithPumpId(tempBasalProcessDTO.itemOne.getPumpId(), entriesFromHistory);
+                    TemporaryBasal tempBasal = findTempBasalWithPumpId(tempBasalProcessDTO.itemOne.getPumpId(), entriesByPumpId);
 
                     if (tempBasal == null) {
-                        DbObjectBase treatmentDb = findDbEntry(treatment, entriesFromHistory);
+                        DbObjectBase treatmentDb = findDbEntry(treatment, entriesByDate);
 
                         if (isLogEnabled())
                             LOG.debug("Add " + ProcessHistoryRecord.TBR.getDescription() + " {} - (entryFromDb={}) ", treatment, treatmentDb);
@@ -781,14 +789,12 @@ public class MedtronicHistoryData {
     }
 
 
-    private TemporaryBasal findTempBasalWithPumpId(long pumpId, List<? extends DbObjectBase> entriesFromHistory) {
+    private TemporaryBasal findTempBasalWithPumpId(long pumpId, Map<Long, DbObjectBase> entriesByPumpId) {
 
-        for (DbObjectBase dbObjectBase : entriesFromHistory) {
-            TemporaryBasal tbr = (TemporaryBasal) dbObjectBase;
+        TemporaryBasal tbr = (TemporaryBasal) entriesByPumpId.get(pumpId);
 
-            if (tbr.pumpId == pumpId) {
-                return tbr;
-            }
+        if (tbr != null) {
+            return tbr;
         }
 
         TemporaryBasal tempBasal = databaseHelper.findTempBasalByPumpId(pumpId);
@@ -796,6 +802,70 @@ public class MedtronicHistoryData {
     }
 
 
+    // first entry for every pumpId, same as first match when iterating the list
+    private Map<Long, DbObjectBase> mapByPumpId(List<? extends DbObjectBase> entries) {
+        Map<Long, DbObjectBase> map = new HashMap<>();
+
+        for (DbObjectBase entry : entries) {
+            if (!map.containsKey(entry.getPumpId())) {
+                map.put(entry.getPumpId(), entry);
+            }
+        }
+
+        return map;
+    }
+
+
+    /**
+     * Db entries sorted by date, entries within time window of pump record are found with binary search
+     * instead of going through all entries for every pump record.
+     */
+    static class DbEntriesByDate {
+
+        final List<DbObjectBase> entries;
+        private final long[] dates;
+
+
+        DbEntriesByDate(List<? extends DbObjectBase> entriesFromHistory) {
+            entries = new ArrayList<>(entriesFromHistory);
+            Collections.sort(entries, (o1, o2) -> Long.compare(o1.getDate(), o2.getDate()));
+
+            dates = new long[entries.size()];
+            for (int i = 0; i < dates.length; i++) {
+                dates[i] = entries.get(i).getDate();
+            }
+        }
+
+
+        int size() {
+            return entries.size();
+        }
+
+
+        // index of first entry with date > time
+        int firstAfter(long time) {
+            int low = 0;
+            int high = dates.length;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dates[mid] > time)
+                    high = mid;
+                else
+                    low = mid + 1;
+            }
+
+            return low;
+        }
+
+
+        // index of first entry with date >= time
+        int firstFrom(long time) {
+            return firstAfter(time - 1);
+        }
+    }
+
+
     /**
      * findDbEntry - finds Db entries in database, while theoretically this should have same dateTime they
      * don't. Entry on pump is few seconds before treatment in AAPS, and on manual boluses on pump there
@@ -805,14 +875,14 @@ public class MedtronicHistoryData {
      * @param entriesFromHistory entries from history
      * @return DbObject from AAPS (if found)
      */
-    private DbObjectBase findDbEntry(PumpHistoryEntry treatment, List<? extends DbObjectBase> entriesFromHistory) {
+    DbObjectBase findDbEntry(PumpHistoryEntry treatment, DbEntriesByDate entriesFromHistory) {
 
         long proposedTime = DateTimeUtil.toMillisFromATD(treatment.atechDateTime);
 
         //proposedTime += (this.pumpTime.timeDifference * 1000);
 
         if (doubleBolusDebug)
-            LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}", treatment, gson.toJson(entriesFromHistory));
+            LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}", treatment, gson.toJson(entriesFromHistory.entries));
 
         if (entriesFromHistory.size() == 0) {
             if (doubleBolusDebug)
@@ -820,7 +890,7 @@ public class MedtronicHistoryData {
             return null;
         } else if (entriesFromHistory.size() == 1) {
             if (doubleBolusDebug)
-                LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}. Type=SingleEntry", treatment, entriesFromHistory.get(0));
+                LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}. Type=SingleEntry", treatment, entriesFromHistory.entries.get(0));
 
             // TODO: Fix db code
             // if difference is bigger than 2 minutes we discard entry
@@ -829,13 +899,13 @@ public class MedtronicHistoryData {
             if (doubleBolusDebug)
                 LOG.debug("DoubleBolusDebug: findDbEntry maxMillisAllowed={}, AtechDateTime={} (add 2 minutes). ", maxMillisAllowed, treatment.atechDateTime);
 
-            if (entriesFromHistory.get(0).getDate() > maxMillisAllowed) {
+            if (entriesFromHistory.entries.get(0).getDate() > maxMillisAllowed) {
                 if (doubleBolusDebug)
                     LOG.debug("DoubleBolusDebug: findDbEntry entry filtered out, returning null. ");
                 return null;
             }
 
-            return entriesFromHistory.get(0);
+            return entriesFromHistory.entries.get(0);
         }
 
         for (int min = 0; min < 2; min += 1) {
@@ -848,18 +918,14 @@ public class MedtronicHistoryData {
 
                 int diff = (sec * 1000);
 
-                List<DbObjectBase> outList = new ArrayList<>();
-
-                for (DbObjectBase treatment1 : entriesFromHistory) {
-
-                    if ((treatment1.getDate() > proposedTime - diff) && (treatment1.getDate() < proposedTime + diff)) {
-                        outList.add(treatment1);
-                    }
-                }
+                // entries with date in (proposedTime - diff, proposedTime + diff)
+                int from = entriesFromHistory.firstAfter(proposedTime - diff);
+                int to = Math.max(from, entriesFromHistory.firstFrom(proposedTime + diff));
+                List<DbObjectBase> outList = entriesFromHistory.entries.subList(from, to);
 
                 if (outList.size() == 1) {
                     if (doubleBolusDebug)
-                        LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}. Type=EntrySelected, AtTimeMin={}, AtTimeSec={}", treatment, entriesFromHistory.get(0), min, sec);
+                        LOG.debug("DoubleBolusDebug: findDbEntry Treatment={}, FromDb={}. Type=EntrySelected, AtTimeMin={}, AtTimeSec={}", treatment, outList.get(0), min, sec);
 
                     return outList.get(0);
                 }
@@ -888,30 +954,36 @@ public class MedtronicHistoryData {
     }
 
 
-    private void filterOutAlreadyAddedEntries(List<PumpHistoryEntry> entryList, List<? extends DbObjectBase> treatmentsFromHistory) {
+    void filterOutAlreadyAddedEntries(List<PumpHistoryEntry> entryList, List<? extends DbObjectBase> treatmentsFromHistory) {
 
         if (isCollectionEmpty(treatmentsFromHistory))
             return;
 
-        List<DbObjectBase> removeTreatmentsFromHistory = new ArrayList<>();
-        List<PumpHistoryEntry> removeTreatmentsFromPH = new ArrayList<>();
+        // pump entries by pumpId in list order, matched entry is taken from queue so it's paired only once
+        Map<Long, LinkedList<PumpHistoryEntry>> entriesByPumpId = new HashMap<>();
+
+        for (PumpHistoryEntry bolus : entryList) {
+            LinkedList<PumpHistoryEntry> entries = entriesByPumpId.get(bolus.getPumpId());
+
+            if (entries == null) {
+                entries = new LinkedList<>();
+                entriesByPumpId.put(bolus.getPumpId(), entries);
+            }
+
+            entries.add(bolus);
+        }
+
+        Set<Object> removeTreatmentsFromHistory = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Object> removeTreatmentsFromPH = Collections.newSetFromMap(new IdentityHashMap<>());
 
         for (DbObjectBase treatment : treatmentsFromHistory) {
 
             if (treatment.getPumpId() != 0) {
 
-                PumpHistoryEntry selectedBolus = null;
-
-                for (PumpHistoryEntry bolus : entryList) {
-                    if (bolus.getPumpId() == treatment.getPumpId()) {
-                        selectedBolus = bolus;
-                        break;
-                    }
-                }
+                LinkedList<PumpHistoryEntry> entries = entriesByPumpId.get(treatment.getPumpId());
+                PumpHistoryEntry selectedBolus = (entries == null) ? null : entries.poll();
 
                 if (selectedBolus != null) {
-                    entryList.remove(selectedBolus);
-
                     removeTreatmentsFromPH.add(selectedBolus);
                     removeTreatmentsFromHistory.add(treatment);
                 }
@@ -923,7 +995,26 @@ public class MedtronicHistoryData {
                     gson.toJson(removeTreatmentsFromPH),
                     gsonCore.toJson(removeTreatmentsFromHistory));
 
-        treatmentsFromHistory.removeAll(removeTreatmentsFromHistory);
+        removeItems(entryList, removeTreatmentsFromPH);
+        removeItems(treatmentsFromHistory, removeTreatmentsFromHistory);
+    }
+
+
+    // removes items (by identity) in one pass, instead of List.removeAll which is O(n*m)
+    private <T> void removeItems(List<T> list, Set<Object> removeSet) {
+        if (removeSet.isEmpty())
+            return;
+
+        List<T> keepList = new ArrayList<>(list.size());
+
+        for (T item : list) {
+            if (!removeSet.contains(item)) {
+                keepList.add(item);
+            }
+        }
+
+        list.clear();
+        list.addAll(keepList);
     }
 
 
@@ -8,6 +8,9 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.db.BgReading;
@@ -74,10 +77,10 @@ public class SourceNSClientPlugin extends PluginBase implements BgSourceInterfac
                 if (L.isEnabled(L.BGSOURCE))
                     log.debug("Received NS Data: " + sgvstring);
                 JSONArray jsonArray = new JSONArray(sgvstring);
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    JSONObject sgvJson = jsonArray.getJSONObject(i);
-                    storeSgv(sgvJson);
-                }
+                List<NSSgv> sgvs = new ArrayList<>();
+                for (int i = 0; i < jsonArray.length(); i++)
+                    sgvs.add(new NSSgv(jsonArray.getJSONObject(i)));
+                storeSgvs(sgvs);
             }
         } catch (Exception e) {
             log.error("Unhandled exception", e);
@@ -87,6 +90,33 @@ public class SourceNSClientPlugin extends PluginBase implements BgSourceInterfac
         SP.putBoolean(R.string.key_ObjectivesbgIsAvailableInNS, true);
     }
 
+    // sgvs parsed by NSClientService, stored in one batch
+    public void handleNewSgvs(List<NSSgv> sgvs) {
+
+        if (!isEnabled(PluginType.BGSOURCE) && !SP.getBoolean(R.string.key_ns_autobackfill, true))
+            return;
+
+        if (L.isEnabled(L.BGSOURCE))
+            log.debug("Received NS sgvs: " + sgvs.size());
+        try {
+            storeSgvs(sgvs);
+        } catch (Exception e) {
+            log.error("Unhandled exception", e);
+        }
+
+        // Objectives 0
+        SP.putBoolean(R.string.key_ObjectivesbgIsAvailableInNS, true);
+    }
+
+    private void storeSgvs(List<NSSgv> sgvs) {
+        List<BgReading> bgReadings = new ArrayList<>();
+        for (NSSgv sgv : sgvs) {
+            bgReadings.add(new BgReading(sgv));
+            detectSource(JsonHelper.safeGetString(sgv.getData(), "device", "none"), JsonHelper.safeGetLong(sgv.getData(), "mills"));
+        }
+        MainApp.getDbHelper().createIfNotExists(bgReadings, "NS");
+    }
+
     private void storeSgv(JSONObject sgvJson) {
         NSSgv nsSgv = new NSSgv(sgvJson);
         BgReading bgReading = new BgReading(nsSgv);
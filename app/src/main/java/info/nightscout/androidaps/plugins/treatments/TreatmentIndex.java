@@ -0,0 +1,69 @@
+package info.nightscout.androidaps.plugins.treatments;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of treatments sorted by date, newest at index 0.
+ * Time range lookups are done by binary search so callers iterate only treatments they need.
+ * TreatmentsPlugin builds new instance every time treatments are reloaded from TreatmentService
+ * and readers keep using the snapshot they obtained.
+ */
+public class TreatmentIndex {
+
+    private final List<Treatment> treatments; // newest at index 0
+    private final long[] dates;
+
+    public TreatmentIndex() {
+        this(new ArrayList<>());
+    }
+
+    public TreatmentIndex(List<Treatment> list) {
+        List<Treatment> sorted = new ArrayList<>(list);
+        Collections.sort(sorted, (o1, o2) -> Long.compare(o2.date, o1.date));
+        treatments = Collections.unmodifiableList(sorted);
+        dates = new long[sorted.size()];
+        for (int i = 0; i < dates.length; i++)
+            dates[i] = sorted.get(i).date;
+    }
+
+    public int size() {
+        return dates.length;
+    }
+
+    public Treatment get(int index) {
+        return treatments.get(index);
+    }
+
+    public List<Treatment> getAll() {
+        return treatments;
+    }
+
+    /**
+     * @return index of newest treatment with date <= time or size() if there is no such treatment
+     */
+    public int indexAtOrBefore(long time) {
+        int low = 0;
+        int high = dates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] <= time)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return treatments with from < date <= to, newest first
+     */
+    public List<Treatment> getRange(long from, long to) {
+        int newest = indexAtOrBefore(to);
+        int oldest = indexAtOrBefore(from);
+        if (newest >= oldest)
+            return Collections.emptyList();
+        return treatments.subList(newest, oldest);
+    }
+}
@@ -23,7 +23,9 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -63,20 +65,46 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
         dbInitialize();
         disposable.add(RxBus.INSTANCE
                 .toObservable(EventNsTreatment.class)
+                // NS sync can deliver thousands of treatments, store them in bounded batches, one transaction each
+                .buffer(1, TimeUnit.SECONDS, 500)
+                .filter(events -> !events.isEmpty())
                 .observeOn(Schedulers.io())
-                .subscribe(event -> {
-                    int mode = event.getMode();
-                    JSONObject payload = event.getPayload();
-
-                    if (mode == EventNsTreatment.Companion.getADD() || mode == EventNsTreatment.Companion.getUPDATE()) {
-                        this.createTreatmentFromJsonIfNotExists(payload);
-                    } else { // EventNsTreatment.REMOVE
-                        this.deleteNS(payload);
-                    }
-                }, FabricPrivacy::logException)
+                .subscribe(this::handleNsTreatments, FabricPrivacy::logException)
         );
     }
 
+    private void handleNsTreatments(List<EventNsTreatment> events) {
+        // only the last event for the same NS _id matters, final state is the same
+        Map<String, EventNsTreatment> lastById = new HashMap<>();
+        for (EventNsTreatment event : events) {
+            String _id = JsonHelper.safeGetString(event.getPayload(), "_id");
+            if (_id != null) lastById.put(_id, event);
+        }
+        try {
+            getDao().callBatchTasks(() -> {
+                for (EventNsTreatment event : events) {
+                    String _id = JsonHelper.safeGetString(event.getPayload(), "_id");
+                    if (_id != null && lastById.get(_id) != event) continue;
+                    handleNsTreatment(event);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    private void handleNsTreatment(EventNsTreatment event) {
+        int mode = event.getMode();
+        JSONObject payload = event.getPayload();
+
+        if (mode == EventNsTreatment.Companion.getADD() || mode == EventNsTreatment.Companion.getUPDATE()) {
+            this.createTreatmentFromJsonIfNotExists(payload);
+        } else { // EventNsTreatment.REMOVE
+            this.deleteNS(payload);
+        }
+    }
+
     /**
      * This method is a simple re-implementation of the database create and up/downgrade functionality
      * in SQLiteOpenHelper#getDatabaseLocked method.
@@ -112,12 +140,18 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
             if (L.isEnabled(L.DATATREATMENTS))
                 log.info("onCreate");
             TableUtils.createTableIfNotExists(this.getConnectionSource(), Treatment.class);
+            createIndexes();
         } catch (SQLException e) {
             log.error("Can't create database", e);
             throw new RuntimeException(e);
         }
     }
 
+    private void createIndexes() throws SQLException {
+        getDao().executeRaw("CREATE INDEX IF NOT EXISTS `" + Treatment.TABLE_TREATMENTS + "_date_isValid_idx` ON `" + Treatment.TABLE_TREATMENTS + "` (`date`, `isValid`)");
+        getDao().executeRaw("CREATE INDEX IF NOT EXISTS `" + Treatment.TABLE_TREATMENTS + "__id_idx` ON `" + Treatment.TABLE_TREATMENTS + "` (`_id`)");
+    }
+
     public void onUpgrade(ConnectionSource connectionSource, int oldVersion, int newVersion) {
         if (oldVersion == 7 && newVersion == 8) {
             log.debug("Upgrading database from v7 to v8");
@@ -156,6 +190,7 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
         try {
             TableUtils.dropTable(this.getConnectionSource(), Treatment.class, true);
             TableUtils.createTableIfNotExists(this.getConnectionSource(), Treatment.class);
+            createIndexes();
             DatabaseHelper.updateEarliestDataChange(0);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
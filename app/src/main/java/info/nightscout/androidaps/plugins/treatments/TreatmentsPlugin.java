@@ -83,7 +83,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
     private IobTotal lastTreatmentCalculation;
     private IobTotal lastTempBasalsCalculation;
 
-    private final ArrayList<Treatment> treatments = new ArrayList<>();
+    private volatile TreatmentIndex treatments = new TreatmentIndex();
     private final Intervals<TemporaryBasal> tempBasals = new NonOverlappingIntervals<>();
     private final Intervals<ExtendedBolus> extendedBoluses = new NonOverlappingIntervals<>();
     private final Intervals<TempTarget> tempTargets = new OverlappingIntervals<>();
@@ -171,10 +171,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
     private void initializeTreatmentData(long range) {
         if (L.isEnabled(L.DATATREATMENTS))
             log.debug("initializeTreatmentData");
-        synchronized (treatments) {
-            treatments.clear();
-            treatments.addAll(getService().getTreatmentDataFromTime(DateUtil.now() - range, false));
-        }
+        treatments = new TreatmentIndex(getService().getTreatmentDataFromTime(DateUtil.now() - range, false));
     }
 
     private void initializeTempBasalData(long range) {
@@ -218,27 +215,44 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
 
     @Override
     public IobTotal getCalculationToTimeTreatments(long time) {
-        IobTotal total = new IobTotal(time);
+        return getCalculationToTimeTreatments(new long[]{time})[0];
+    }
+
+    // times ascending, every treatment is visited once and evaluated for all times it contributes to
+    public IobTotal[] getCalculationToTimeTreatments(long[] times) {
+        IobTotal[] totals = new IobTotal[times.length];
+        for (int i = 0; i < times.length; i++)
+            totals[i] = new IobTotal(times[i]);
+        if (times.length == 0)
+            return totals;
 
         Profile profile = ProfileFunctions.getInstance().getProfile();
         if (profile == null)
-            return total;
+            return totals;
 
         InsulinInterface insulinInterface = ConfigBuilderPlugin.getPlugin().getActiveInsulin();
         if (insulinInterface == null)
-            return total;
+            return totals;
 
         PumpInterface pumpInterface = ConfigBuilderPlugin.getPlugin().getActivePump();
         if (pumpInterface == null)
-            return total;
+            return totals;
 
         double dia = profile.getDia();
-
-        synchronized (treatments) {
-            for (Integer pos = 0; pos < treatments.size(); pos++) {
-                Treatment t = treatments.get(pos);
-                if (!t.isValid) continue;
-                if (t.date > time) continue;
+        double snoozeDiaDivisor = SP.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0);
+
+        // older treatments don't contribute to IOB
+        TreatmentIndex snapshot = treatments;
+        long diaLength = (long) (Math.max(dia, insulinInterface.getDia()) * T.hours(1).msecs());
+        int newest = snapshot.indexAtOrBefore(times[times.length - 1]);
+        int oldest = snapshot.indexAtOrBefore(times[0] - diaLength);
+        for (int pos = newest; pos < oldest; pos++) {
+            Treatment t = snapshot.get(pos);
+            if (!t.isValid) continue;
+            for (int i = 0; i < times.length; i++) {
+                long time = times[i];
+                if (t.date > time || t.date <= time - diaLength) continue;
+                IobTotal total = totals[i];
                 Iob tIOB = t.iobCalc(time, dia);
                 total.iob += tIOB.iobContrib;
                 total.activity += tIOB.activityContrib;
@@ -248,23 +262,28 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
                     // instead of dividing the DIA that only worked on the bilinear curves,
                     // multiply the time the treatment is seen active.
                     long timeSinceTreatment = time - t.date;
-                    long snoozeTime = t.date + (long) (timeSinceTreatment * SP.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0));
+                    long snoozeTime = t.date + (long) (timeSinceTreatment * snoozeDiaDivisor);
                     Iob bIOB = t.iobCalc(snoozeTime, dia);
                     total.bolussnooze += bIOB.iobContrib;
                 }
             }
         }
+        for (int i = 0; i < times.length; i++)
+            if (totals[i].lastBolusTime == 0)
+                totals[i].lastBolusTime = lastBolusTime(snapshot, snapshot.indexAtOrBefore(times[i] - diaLength), null);
 
         if (!pumpInterface.isFakingTempsByExtendedBoluses())
             synchronized (extendedBoluses) {
                 for (int pos = 0; pos < extendedBoluses.size(); pos++) {
                     ExtendedBolus e = extendedBoluses.get(pos);
-                    if (e.date > time) continue;
-                    IobTotal calc = e.iobCalc(time);
-                    total.plus(calc);
+                    for (int i = 0; i < times.length; i++) {
+                        if (e.date > times[i]) continue;
+                        IobTotal calc = e.iobCalc(times[i]);
+                        totals[i].plus(calc);
+                    }
                 }
             }
-        return total;
+        return totals;
     }
 
     @Override
@@ -290,24 +309,22 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         }
         long absorptionTime_ago = now - (Double.valueOf(maxAbsorptionHours * T.hours(1).msecs())).longValue();
 
-        synchronized (treatments) {
-            for (Treatment treatment : treatments) {
-                if (!treatment.isValid)
-                    continue;
-                long t = treatment.date;
+        for (Treatment treatment : treatments.getRange(Math.min(dia_ago, absorptionTime_ago), now)) {
+            if (!treatment.isValid)
+                continue;
+            long t = treatment.date;
 
-                if (t > dia_ago && t <= now) {
-                    if (treatment.insulin > 0 && treatment.mealBolus) {
-                        result.boluses += treatment.insulin;
-                    }
+            if (t > dia_ago && t <= now) {
+                if (treatment.insulin > 0 && treatment.mealBolus) {
+                    result.boluses += treatment.insulin;
                 }
+            }
 
-                if (t > absorptionTime_ago && t <= now) {
-                    if (treatment.carbs >= 1) {
-                        result.carbs += treatment.carbs;
-                        if (t > result.lastCarbTime)
-                            result.lastCarbTime = t;
-                    }
+            if (t > absorptionTime_ago && t <= now) {
+                if (treatment.carbs >= 1) {
+                    result.carbs += treatment.carbs;
+                    if (t > result.lastCarbTime)
+                        result.lastCarbTime = t;
                 }
             }
         }
@@ -325,9 +342,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
 
     @Override
     public List<Treatment> getTreatmentsFromHistory() {
-        synchronized (treatments) {
-            return new ArrayList<>(treatments);
-        }
+        return new ArrayList<>(treatments.getAll());
     }
 
 
@@ -340,73 +355,61 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
      */
     @Override
     public List<Treatment> getTreatmentsFromHistoryAfterTimestamp(long fromTimestamp) {
-        List<Treatment> in5minback = new ArrayList<>();
-
         long time = System.currentTimeMillis();
-        synchronized (treatments) {
-            if (MedtronicHistoryData.doubleBolusDebug)
-                log.debug("DoubleBolusDebug: AllTreatmentsInDb: {}", MedtronicUtil.getGsonInstanceCore().toJson(treatments));
+        TreatmentIndex snapshot = treatments;
+        if (MedtronicHistoryData.doubleBolusDebug)
+            log.debug("DoubleBolusDebug: AllTreatmentsInDb: {}", MedtronicUtil.getGsonInstanceCore().toJson(snapshot.getAll()));
 
-            for (Treatment t : treatments) {
-                if (t.date <= time && t.date >= fromTimestamp)
-                    in5minback.add(t);
-            }
+        List<Treatment> in5minback = new ArrayList<>(snapshot.getRange(fromTimestamp - 1, time));
 
-            if (MedtronicHistoryData.doubleBolusDebug)
-                log.debug("DoubleBolusDebug: FilteredTreatments: AfterTime={}, Items={}", fromTimestamp, MedtronicUtil.getGsonInstanceCore().toJson(in5minback));
+        if (MedtronicHistoryData.doubleBolusDebug)
+            log.debug("DoubleBolusDebug: FilteredTreatments: AfterTime={}, Items={}", fromTimestamp, MedtronicUtil.getGsonInstanceCore().toJson(in5minback));
 
-            return in5minback;
-        }
+        return in5minback;
     }
 
 
     @Override
     public List<Treatment> getCarbTreatments5MinBackFromHistory(long time) {
         List<Treatment> in5minback = new ArrayList<>();
-        synchronized (treatments) {
-            for (Treatment t : treatments) {
-                if (!t.isValid)
-                    continue;
-                if (t.date <= time && t.date > time - 5 * 60 * 1000 && t.carbs > 0)
-                    in5minback.add(t);
-            }
-            return in5minback;
+        for (Treatment t : treatments.getRange(time - 5 * 60 * 1000, time)) {
+            if (!t.isValid)
+                continue;
+            if (t.carbs > 0)
+                in5minback.add(t);
         }
+        return in5minback;
     }
 
     @Override
     public long getLastBolusTime() {
-        long now = System.currentTimeMillis();
-        long last = 0;
-        synchronized (treatments) {
-            for (Treatment t : treatments) {
-                if (!t.isValid)
-                    continue;
-                if (t.date > last && t.insulin > 0 && t.isValid && t.date <= now)
-                    last = t.date;
-            }
-        }
+        TreatmentIndex snapshot = treatments;
+        long last = lastBolusTime(snapshot, snapshot.indexAtOrBefore(System.currentTimeMillis()), null);
         if (L.isEnabled(L.DATATREATMENTS))
             log.debug("Last bolus time: " + new Date(last).toLocaleString());
         return last;
     }
 
     public long getLastBolusTime(boolean isSMB) {
-        long now = System.currentTimeMillis();
-        long last = 0;
-        synchronized (treatments) {
-            for (Treatment t : treatments) {
-                if (!t.isValid)
-                    continue;
-                if (t.date > last && t.insulin > 0 && t.isValid && t.date <= now && isSMB == t.isSMB)
-                    last = t.date;
-            }
-        }
+        TreatmentIndex snapshot = treatments;
+        long last = lastBolusTime(snapshot, snapshot.indexAtOrBefore(System.currentTimeMillis()), isSMB);
         if (L.isEnabled(L.DATATREATMENTS))
             log.debug("Last manual bolus time: " + new Date(last).toLocaleString());
         return last;
     }
 
+    // snapshot is sorted so first valid bolus from index is the newest one
+    private static long lastBolusTime(TreatmentIndex snapshot, int fromIndex, @Nullable Boolean isSMB) {
+        for (int pos = fromIndex; pos < snapshot.size(); pos++) {
+            Treatment t = snapshot.get(pos);
+            if (!t.isValid)
+                continue;
+            if (t.insulin > 0 && (isSMB == null || isSMB == t.isSMB))
+                return t.date;
+        }
+        return 0;
+    }
+
     @Override
     public boolean isInHistoryRealTempBasalInProgress() {
         return getRealTempBasalFromHistory(System.currentTimeMillis()) != null;
@@ -551,6 +554,86 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         return total;
     }
 
+    /**
+     * Basal IOB for ascending times >= truncateTime (predictions), temps are cut to truncateTime.
+     * Every temp is visited once and its delivery is split to parts only once for all times.
+     * lastAutosensResult == null gives the same result as getCalculationToTimeTempBasals(time, true, truncateTime)
+     */
+    public IobTotal[] getCalculationToTimeTempBasals(long[] times, long truncateTime, @Nullable AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
+        IobTotal[] totals = new IobTotal[times.length];
+        for (int i = 0; i < times.length; i++)
+            totals[i] = new IobTotal(times[i]);
+        if (times.length == 0)
+            return totals;
+
+        InsulinInterface insulinInterface = ConfigBuilderPlugin.getPlugin().getActiveInsulin();
+        if (insulinInterface == null)
+            return totals;
+
+        synchronized (tempBasals) {
+            for (int pos = 0; pos < tempBasals.size(); pos++) {
+                TemporaryBasal t = tempBasals.get(pos);
+                if (t.date > times[times.length - 1]) continue;
+                Profile profile = ProfileFunctions.getInstance().getProfile(t.date);
+                if (profile == null) continue;
+                TemporaryBasal temp = t;
+                if (t.end() > truncateTime) {
+                    temp = new TemporaryBasal();
+                    temp.copyFrom(t);
+                    temp.cutEndTo(truncateTime);
+                }
+                if (temp.end() <= times[0]) {
+                    temp.iobCalc(times, totals, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
+                } else {
+                    // still running at times[0], parts depend on time
+                    for (int i = 0; i < times.length; i++) {
+                        if (t.date > times[i]) continue;
+                        if (lastAutosensResult == null)
+                            totals[i].plus(temp.iobCalc(times[i], profile));
+                        else
+                            totals[i].plus(temp.iobCalc(times[i], profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget));
+                    }
+                }
+            }
+        }
+        if (ConfigBuilderPlugin.getPlugin().getActivePump().isFakingTempsByExtendedBoluses()) {
+            IobTotal[] totalsExt = new IobTotal[times.length];
+            for (int i = 0; i < times.length; i++)
+                totalsExt[i] = new IobTotal(times[i]);
+            synchronized (extendedBoluses) {
+                for (int pos = 0; pos < extendedBoluses.size(); pos++) {
+                    ExtendedBolus e = extendedBoluses.get(pos);
+                    if (e.date > times[times.length - 1]) continue;
+                    Profile profile = ProfileFunctions.getInstance().getProfile(e.date);
+                    if (profile == null) continue;
+                    ExtendedBolus ext = e;
+                    if (e.end() > truncateTime) {
+                        ext = new ExtendedBolus();
+                        ext.copyFrom(e);
+                        ext.cutEndTo(truncateTime);
+                    }
+                    for (int i = 0; i < times.length; i++) {
+                        if (e.date > times[i]) continue;
+                        if (lastAutosensResult == null)
+                            totalsExt[i].plus(ext.iobCalc(times[i]));
+                        else
+                            totalsExt[i].plus(ext.iobCalc(times[i], profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget));
+                    }
+                }
+            }
+            for (int i = 0; i < times.length; i++) {
+                IobTotal totalExt = totalsExt[i];
+                // Convert to basal iob
+                totalExt.basaliob = totalExt.iob;
+                totalExt.iob = 0d;
+                totalExt.netbasalinsulin = totalExt.extendedBolusInsulin;
+                totalExt.hightempinsulin = totalExt.extendedBolusInsulin;
+                totals[i].plus(totalExt);
+            }
+        }
+        return totals;
+    }
+
     @Override
     public void updateTotalIOBTempBasals() {
         lastTempBasalsCalculation = getCalculationToTimeTempBasals(DateUtil.now());
@@ -707,10 +790,9 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
             if (extendedBoluses.size() > 0)
                 oldestTime = Math.min(oldestTime, extendedBoluses.get(0).date);
         }
-        synchronized (treatments) {
-            if (treatments.size() > 0)
-                oldestTime = Math.min(oldestTime, treatments.get(treatments.size() - 1).date);
-        }
+        TreatmentIndex snapshot = treatments;
+        if (snapshot.size() > 0)
+            oldestTime = Math.min(oldestTime, snapshot.get(snapshot.size() - 1).date);
         oldestTime -= 15 * 60 * 1000L; // allow 15 min before
         return oldestTime;
     }
@@ -760,6 +842,13 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         }
     }
 
+    // see ProfileIntervals.getBoundaries
+    public long[] getProfileSwitchBoundaries() {
+        synchronized (profiles) {
+            return profiles.getBoundaries();
+        }
+    }
+
     @Override
     public void addToHistoryProfileSwitch(ProfileSwitch profileSwitch) {
         //log.debug("Adding new TemporaryBasal record" + profileSwitch.log());
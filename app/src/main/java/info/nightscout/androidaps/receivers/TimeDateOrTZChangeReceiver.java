@@ -16,6 +16,7 @@ import info.nightscout.androidaps.interfaces.PumpInterface;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.configBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.pump.omnipod.util.OmnipodUtil;
+import info.nightscout.androidaps.utils.MidnightTime;
 import info.nightscout.androidaps.utils.TimeChangeType;
 
 public class TimeDateOrTZChangeReceiver extends BroadcastReceiver {
@@ -43,6 +44,9 @@ public class TimeDateOrTZChangeReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         final String action = intent.getAction();
 
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action))
+            MidnightTime.resetCache();
+
         PumpInterface activePump = ConfigBuilderPlugin.getPlugin().getActivePump();
 
         if (activePump==null) {
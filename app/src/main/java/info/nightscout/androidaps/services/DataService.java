@@ -11,22 +11,22 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.nightscout.androidaps.MainApp;
-import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.db.CareportalEvent;
 import info.nightscout.androidaps.events.EventNsFood;
 import info.nightscout.androidaps.events.EventNsTreatment;
 import info.nightscout.androidaps.logging.BundleLogger;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.bus.RxBus;
+import info.nightscout.androidaps.plugins.general.nsclient.NSIngest;
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSDeviceStatus;
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSMbg;
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSSettingsStatus;
-import info.nightscout.androidaps.plugins.general.overview.events.EventNewNotification;
-import info.nightscout.androidaps.plugins.general.overview.notifications.Notification;
 import info.nightscout.androidaps.plugins.general.smsCommunicator.SmsCommunicatorPlugin;
 import info.nightscout.androidaps.plugins.profile.ns.NSProfilePlugin;
-import info.nightscout.androidaps.plugins.pump.danaR.activities.DanaRNSHistorySync;
 import info.nightscout.androidaps.plugins.source.SourceDexcomPlugin;
 import info.nightscout.androidaps.plugins.source.SourceEversensePlugin;
 import info.nightscout.androidaps.plugins.source.SourceGlimpPlugin;
@@ -36,8 +36,6 @@ import info.nightscout.androidaps.plugins.source.SourcePoctechPlugin;
 import info.nightscout.androidaps.plugins.source.SourceTomatoPlugin;
 import info.nightscout.androidaps.plugins.source.SourceXdripPlugin;
 import info.nightscout.androidaps.receivers.DataReceiver;
-import info.nightscout.androidaps.utils.JsonHelper;
-import info.nightscout.androidaps.utils.SP;
 
 
 public class DataService extends IntentService {
@@ -54,7 +52,7 @@ public class DataService extends IntentService {
             log.debug("onHandleIntent " + BundleLogger.log(intent.getExtras()));
         }
 
-        boolean acceptNSData = !SP.getBoolean(R.string.key_ns_upload_only, true);
+        boolean acceptNSData = NSIngest.acceptNSData();
         Bundle bundles = intent.getExtras();
 
         final String action = intent.getAction();
@@ -120,18 +118,19 @@ public class DataService extends IntentService {
 
 
         if (intent.getAction().equals(Intents.ACTION_NEW_TREATMENT) || intent.getAction().equals(Intents.ACTION_CHANGED_TREATMENT)) {
+            int mode = Intents.ACTION_NEW_TREATMENT.equals(intent.getAction()) ? EventNsTreatment.Companion.getADD() : EventNsTreatment.Companion.getUPDATE();
             try {
                 if (bundles.containsKey("treatment")) {
                     JSONObject json = new JSONObject(bundles.getString("treatment"));
-                    handleTreatmentFromNS(json, intent);
+                    NSIngest.handleTreatment(json, mode);
                 }
                 if (bundles.containsKey("treatments")) {
                     String trstring = bundles.getString("treatments");
-                    JSONArray jsonArray = new JSONArray(trstring);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        JSONObject json = jsonArray.getJSONObject(i);
-                        handleTreatmentFromNS(json, intent);
-                    }
+                    List<JSONObject> treatments = toList(new JSONArray(trstring));
+                    MainApp.getDbHelper().runInTransaction(() -> {
+                        for (JSONObject json : treatments)
+                            NSIngest.handleTreatment(json, mode);
+                    });
                 }
             } catch (JSONException e) {
                 log.error("Unhandled exception", e);
@@ -143,16 +142,16 @@ public class DataService extends IntentService {
                 if (bundles.containsKey("treatment")) {
                     String trstring = bundles.getString("treatment");
                     JSONObject json = new JSONObject(trstring);
-                    handleRemovedTreatmentFromNS(json);
+                    NSIngest.handleRemovedTreatment(json);
                 }
 
                 if (bundles.containsKey("treatments")) {
                     String trstring = bundles.getString("treatments");
-                    JSONArray jsonArray = new JSONArray(trstring);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        JSONObject json = jsonArray.getJSONObject(i);
-                        handleRemovedTreatmentFromNS(json);
-                    }
+                    List<JSONObject> treatments = toList(new JSONArray(trstring));
+                    MainApp.getDbHelper().runInTransaction(() -> {
+                        for (JSONObject json : treatments)
+                            NSIngest.handleRemovedTreatment(json);
+                    });
                 }
             } catch (JSONException e) {
                 log.error("Unhandled exception", e);
@@ -181,68 +180,11 @@ public class DataService extends IntentService {
         }
     }
 
-    private void handleRemovedTreatmentFromNS(JSONObject json) {
-        // new DB model
-        EventNsTreatment evtTreatment = new EventNsTreatment(EventNsTreatment.Companion.getREMOVE(), json);
-        RxBus.INSTANCE.send(evtTreatment);
-        // old DB model
-        String _id = JsonHelper.safeGetString(json, "_id");
-        MainApp.getDbHelper().deleteTempTargetById(_id);
-        MainApp.getDbHelper().deleteTempBasalById(_id);
-        MainApp.getDbHelper().deleteExtendedBolusById(_id);
-        MainApp.getDbHelper().deleteCareportalEventById(_id);
-        MainApp.getDbHelper().deleteProfileSwitchById(_id);
-    }
-
-    private void handleTreatmentFromNS(JSONObject json, Intent intent) {
-        // new DB model
-        int mode = Intents.ACTION_NEW_TREATMENT.equals(intent.getAction()) ? EventNsTreatment.Companion.getADD() : EventNsTreatment.Companion.getUPDATE();
-        double insulin = JsonHelper.safeGetDouble(json, "insulin");
-        double carbs = JsonHelper.safeGetDouble(json, "carbs");
-        String eventType = JsonHelper.safeGetString(json, "eventType");
-        if (eventType == null) {
-            log.debug("Wrong treatment. Ignoring : " + json.toString());
-            return;
-        }
-        if (insulin > 0 || carbs > 0) {
-            EventNsTreatment evtTreatment = new EventNsTreatment(mode, json);
-            RxBus.INSTANCE.send(evtTreatment);
-        } else if (json.has(DanaRNSHistorySync.DANARSIGNATURE)) {
-            // old DB model
-            MainApp.getDbHelper().updateDanaRHistoryRecordId(json);
-        } else if (eventType.equals(CareportalEvent.TEMPORARYTARGET)) {
-            MainApp.getDbHelper().createTemptargetFromJsonIfNotExists(json);
-        } else if (eventType.equals(CareportalEvent.TEMPBASAL)) {
-            MainApp.getDbHelper().createTempBasalFromJsonIfNotExists(json);
-        } else if (eventType.equals(CareportalEvent.COMBOBOLUS)) {
-            MainApp.getDbHelper().createExtendedBolusFromJsonIfNotExists(json);
-        } else if (eventType.equals(CareportalEvent.PROFILESWITCH)) {
-            MainApp.getDbHelper().createProfileSwitchFromJsonIfNotExists(json);
-        } else if (eventType.equals(CareportalEvent.SITECHANGE) ||
-                eventType.equals(CareportalEvent.INSULINCHANGE) ||
-                eventType.equals(CareportalEvent.SENSORCHANGE) ||
-                eventType.equals(CareportalEvent.BGCHECK) ||
-                eventType.equals(CareportalEvent.NOTE) ||
-                eventType.equals(CareportalEvent.NONE) ||
-                eventType.equals(CareportalEvent.ANNOUNCEMENT) ||
-                eventType.equals(CareportalEvent.QUESTION) ||
-                eventType.equals(CareportalEvent.EXERCISE) ||
-                eventType.equals(CareportalEvent.OPENAPSOFFLINE) ||
-                eventType.equals(CareportalEvent.PUMPBATTERYCHANGE)) {
-            MainApp.getDbHelper().createCareportalEventFromJsonIfNotExists(json);
-        }
-
-        if (eventType.equals(CareportalEvent.ANNOUNCEMENT)) {
-            long date = JsonHelper.safeGetLong(json, "mills");
-            long now = System.currentTimeMillis();
-            String enteredBy = JsonHelper.safeGetString(json, "enteredBy", "");
-            String notes = JsonHelper.safeGetString(json, "notes", "");
-            if (date > now - 15 * 60 * 1000L && !notes.isEmpty()
-                    && !enteredBy.equals(SP.getString("careportal_enteredby", "AndroidAPS"))) {
-                Notification announcement = new Notification(Notification.NSANNOUNCEMENT, notes, Notification.ANNOUNCEMENT, 60);
-                RxBus.INSTANCE.send(new EventNewNotification(announcement));
-            }
-        }
+    private static List<JSONObject> toList(JSONArray jsonArray) throws JSONException {
+        List<JSONObject> list = new ArrayList<>();
+        for (int i = 0; i < jsonArray.length(); i++)
+            list.add(jsonArray.getJSONObject(i));
+        return list;
     }
 
     private void storeMbg(JSONObject mbgJson) {
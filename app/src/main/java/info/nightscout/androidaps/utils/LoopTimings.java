@@ -0,0 +1,154 @@
+package info.nightscout.androidaps.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timing of the path from new BG to pump enact.
+ * Trace is started when EventNewBG is fired and every stage marks time elapsed since previous stage.
+ * Loop stages take the trace as token, so loop runs not triggered by new BG don't mark or finish it.
+ * Durations are collected in histograms per stage, last traces are kept for report.
+ * Report is shown in Maintenance and added to exported logs
+ */
+public class LoopTimings {
+
+    public enum Stage {
+        CALCULATION_START("calculation start"), // EventNewBG delivered to IobCobCalculatorPlugin
+        AUTOSENS("autosens"), // IobCobThread finished
+        LOOP("loop start"), // EventAutosensCalculationFinished delivered to LoopPlugin
+        APS("determine basal"),
+        QUEUE("queued"), // constraints applied, request sent to CommandQueue
+        TBR("pump tbr"),
+        SMB("pump smb");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    // upper bounds in msec, last bucket is everything above
+    private static final long[] BUCKETS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+    private static final int MAX_TRACES = 20;
+
+    private static class Histogram {
+        final int[] counts = new int[BUCKETS.length + 1];
+        int count;
+        long total;
+        long max;
+
+        void add(long msec) {
+            int bucket = 0;
+            while (bucket < BUCKETS.length && msec > BUCKETS[bucket])
+                bucket++;
+            counts[bucket]++;
+            count++;
+            total += msec;
+            max = Math.max(max, msec);
+        }
+    }
+
+    public static class Trace {
+        private final long start;
+        private final List<Stage> stages = new ArrayList<>();
+        private final List<Long> durations = new ArrayList<>();
+        private long last;
+        private String result = "running";
+
+        private Trace(long start) {
+            this.start = start;
+            this.last = start;
+        }
+    }
+
+    private static final Histogram[] histograms = new Histogram[Stage.values().length];
+    private static Histogram totals = new Histogram();
+    private static final LinkedList<Trace> traces = new LinkedList<>();
+    private static Trace current = null;
+
+    static {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new Histogram();
+    }
+
+    // new BG, unfinished previous trace is closed
+    public static synchronized void start() {
+        finish("superseded");
+        current = new Trace(System.currentTimeMillis());
+    }
+
+    // ignored when no trace is running, ie. loop is not triggered by new BG
+    public static synchronized void mark(Stage stage) {
+        if (current == null) return;
+        long now = System.currentTimeMillis();
+        long msec = now - current.last;
+        current.last = now;
+        current.stages.add(stage);
+        current.durations.add(msec);
+        histograms[stage.ordinal()].add(msec);
+    }
+
+    // trace of new BG being processed, null when none is running
+    public static synchronized Trace current() {
+        return current;
+    }
+
+    // ignored when trace is null or already finished
+    public static synchronized void mark(Trace trace, Stage stage) {
+        if (trace != null && trace == current) mark(stage);
+    }
+
+    public static synchronized void finish(Trace trace, String result) {
+        if (trace != null && trace == current) finish(result);
+    }
+
+    public static synchronized void finish(String result) {
+        if (current == null) return;
+        current.result = result;
+        totals.add(current.last - current.start);
+        traces.addFirst(current);
+        while (traces.size() > MAX_TRACES)
+            traces.removeLast();
+        current = null;
+    }
+
+    public static synchronized void reset() {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new Histogram();
+        totals = new Histogram();
+        traces.clear();
+        current = null;
+    }
+
+    public static synchronized String report() {
+        StringBuilder sb = new StringBuilder("Loop timings [ms]\n");
+        for (Stage stage : Stage.values())
+            appendHistogram(sb, stage.label, histograms[stage.ordinal()]);
+        appendHistogram(sb, "total", totals);
+        sb.append("\nLast loops\n");
+        for (Trace trace : traces) {
+            sb.append(DateUtil.timeStringWithSeconds(trace.start));
+            for (int i = 0; i < trace.stages.size(); i++)
+                sb.append(' ').append(trace.stages.get(i).label).append(": ").append(trace.durations.get(i));
+            sb.append(" = ").append(trace.last - trace.start).append(' ').append(trace.result).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, String label, Histogram histogram) {
+        if (histogram.count == 0) return;
+        sb.append(String.format(Locale.ENGLISH, "%s count: %d avg: %d max: %d", label, histogram.count, histogram.total / histogram.count, histogram.max));
+        for (int bucket = 0; bucket < histogram.counts.length; bucket++) {
+            if (histogram.counts[bucket] == 0) continue;
+            if (bucket < BUCKETS.length)
+                sb.append(" <=").append(BUCKETS[bucket]);
+            else
+                sb.append(" >").append(BUCKETS[BUCKETS.length - 1]);
+            sb.append(':').append(histogram.counts[bucket]);
+        }
+        sb.append('\n');
+    }
+}
@@ -1,19 +1,68 @@
 package info.nightscout.androidaps.utils;
 
-import android.util.LongSparseArray;
-
+import java.util.Arrays;
 import java.util.Calendar;
 
+/**
+ * Local midnight for any time.
+ * Midnights of a contiguous range of days (23h and 25h DST days included) are kept sorted
+ * and looked up by binary search without locking. Range is extended on miss.
+ * Cache must be reset on time zone change, see TimeDateOrTZChangeReceiver
+ */
 public class MidnightTime {
-    static final LongSparseArray<Long> times = new LongSparseArray<>();
+    // ascending, every value is midnight following previous one
+    static volatile long[] midnights = new long[0];
 
+    // updated without synchronization, approximate
     private static long hits = 0;
     private static long misses = 0;
 
-    private static final int THRESHOLD = 100000;
+    // more than a year of history is not cached, range is started again around requested time
+    private static final int MAX_DAYS = 400;
 
     public static long calc() {
+        return calc(DateUtil.now());
+    }
+
+    public static long calc(long time) {
+        long[] m = midnights;
+        // last midnight is only end of last day, time must be before it
+        int index = Arrays.binarySearch(m, time);
+        if (index < 0) index = -index - 2;
+        if (index >= 0 && index < m.length - 1) {
+            ++hits;
+            return m[index];
+        }
+        return extend(time);
+    }
+
+    private static synchronized long extend(long time) {
+        long[] m = midnights;
+        long midnight = dayStart(time);
+        ++misses;
+
+        long from = midnight;
+        long to = nextDay(midnight);
+        if (m.length > 0) {
+            from = Math.min(from, m[0]);
+            to = Math.max(to, m[m.length - 1]);
+        }
+        if (m.length == 0 || T.msecs(to - from).days() > MAX_DAYS) {
+            from = midnight;
+            to = nextDay(midnight);
+        }
+
+        long[] result = new long[(int) T.msecs(to - from).days() + 3];
+        int size = 0;
+        for (long day = from; day <= to; day = nextDay(day))
+            result[size++] = day;
+        midnights = Arrays.copyOf(result, size);
+        return midnight;
+    }
+
+    private static long dayStart(long time) {
         Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
         c.set(Calendar.HOUR_OF_DAY, 0);
         c.set(Calendar.MINUTE, 0);
         c.set(Calendar.SECOND, 0);
@@ -21,35 +70,18 @@ public class MidnightTime {
         return c.getTimeInMillis();
     }
 
-    public static long calc(long time) {
-        Long m;
-        synchronized (times) {
-            m = times.get(time);
-            if (m != null) {
-                ++hits;
-                return m;
-            }
-            Calendar c = Calendar.getInstance();
-            c.setTimeInMillis(time);
-            c.set(Calendar.HOUR_OF_DAY, 0);
-            c.set(Calendar.MINUTE, 0);
-            c.set(Calendar.SECOND, 0);
-            c.set(Calendar.MILLISECOND, 0);
-            m = c.getTimeInMillis();
-            times.append(time, m);
-            ++misses;
-            if (times.size() > THRESHOLD) resetCache();
-        }
-        return m;
+    // adding a day to start of day that begins at 01:00 (DST change at midnight) would keep 01:00 for all following days
+    private static long nextDay(long midnight) {
+        return dayStart(midnight + T.hours(25).msecs());
     }
 
-    static void resetCache() {
+    public static synchronized void resetCache() {
         hits = 0;
         misses = 0;
-        times.clear();
+        midnights = new long[0];
     }
 
     public static String log() {
-        return "Hits: " + hits + " misses: " + misses + " stored: " + times.size();
+        return "Hits: " + hits + " misses: " + misses + " stored: " + midnights.length;
     }
 }
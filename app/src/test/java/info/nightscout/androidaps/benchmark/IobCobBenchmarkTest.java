@@ -0,0 +1,136 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.List;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.interfaces.PumpInterface;
+import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.plugins.configBuilder.ConfigBuilderPlugin;
+import info.nightscout.androidaps.plugins.configBuilder.ProfileFunctions;
+import info.nightscout.androidaps.plugins.insulin.InsulinOrefRapidActingPlugin;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin;
+import info.nightscout.androidaps.plugins.treatments.TreatmentService;
+import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
+import info.nightscout.androidaps.utils.SP;
+import info.nightscout.androidaps.utils.T;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Throughput and allocation of IOB/COB pipeline on 1, 3 and 7 days of synthetic history.
+ * Skipped unless run with -Pbenchmark, see MicroBenchmark.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, ConfigBuilderPlugin.class, ProfileFunctions.class, SP.class, L.class, TreatmentsPlugin.class, TreatmentService.class})
+public class IobCobBenchmarkTest {
+
+    private static final int[] DAYS = {1, 3, 7};
+
+    private final long now = System.currentTimeMillis();
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void prepareMocks() {
+        Assume.assumeTrue(MicroBenchmark.isEnabled());
+
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockConfigBuilder();
+        AAPSMocker.mockSP();
+        AAPSMocker.mockProfileFunctions();
+        AAPSMocker.mockTreatmentService();
+        PowerMockito.mockStatic(L.class); // logging disabled, it would dominate results
+        databaseHelper = AAPSMocker.mockDatabaseHelper();
+
+        when(ProfileFunctions.getInstance().getProfile(anyLong())).thenReturn(AAPSMocker.getValidProfile());
+        when(ConfigBuilderPlugin.getPlugin().getActiveInsulin()).thenReturn(InsulinOrefRapidActingPlugin.getPlugin());
+        when(ConfigBuilderPlugin.getPlugin().getActivePump()).thenReturn(mock(PumpInterface.class));
+    }
+
+    private TreatmentsPlugin prepareTreatments(int days) {
+        SyntheticData data = new SyntheticData(now, SyntheticData.SEED);
+        TreatmentsPlugin treatmentsPlugin = TreatmentsPlugin.getPlugin();
+        when(treatmentsPlugin.getService().getTreatmentDataFromTime(anyLong(), anyBoolean())).thenReturn(data.treatments(days));
+        when(databaseHelper.getTemporaryBasalsDataFromTime(anyLong(), anyBoolean())).thenReturn(data.tempBasals(days));
+        treatmentsPlugin.initializeData(T.days(days).msecs());
+        return treatmentsPlugin;
+    }
+
+    @Test
+    public void getCalculationToTimeTreatments() {
+        for (int days : DAYS) {
+            TreatmentsPlugin treatmentsPlugin = prepareTreatments(days);
+            MicroBenchmark.Result result = MicroBenchmark.run("getCalculationToTimeTreatments " + days + "d",
+                    () -> treatmentsPlugin.getCalculationToTimeTreatments(now));
+            Assert.assertTrue(result.opsPerSecond > 0);
+        }
+    }
+
+    @Test
+    public void getCalculationToTimeTempBasals() {
+        for (int days : DAYS) {
+            TreatmentsPlugin treatmentsPlugin = prepareTreatments(days);
+            MicroBenchmark.Result result = MicroBenchmark.run("getCalculationToTimeTempBasals " + days + "d",
+                    () -> treatmentsPlugin.getCalculationToTimeTempBasals(now));
+            Assert.assertTrue(result.opsPerSecond > 0);
+        }
+    }
+
+    // IOB for every 5 min bucket of the last 24h as autosens calculation does after app start
+    @Test
+    public void iobForAutosensDay() {
+        for (int days : DAYS) {
+            TreatmentsPlugin treatmentsPlugin = prepareTreatments(days);
+            MicroBenchmark.Result result = MicroBenchmark.run("iob for 24h of buckets " + days + "d", () -> {
+                double sum = 0;
+                for (long time = now - T.days(1).msecs(); time <= now; time += T.mins(5).msecs())
+                    sum += treatmentsPlugin.getCalculationToTimeTreatments(time).iob + treatmentsPlugin.getCalculationToTimeTempBasals(time).basaliob;
+                return sum;
+            });
+            Assert.assertTrue(result.opsPerSecond > 0);
+        }
+    }
+
+    @Test
+    public void createBucketedData() {
+        IobCobCalculatorPlugin iobCobCalculatorPlugin = IobCobCalculatorPlugin.getPlugin();
+        for (int interval : new int[]{5, 1}) {
+            for (int days : DAYS) {
+                List<BgReading> bgReadings = new SyntheticData(now, SyntheticData.SEED).bgReadings(days, interval);
+                // same as calculation thread does on every new BG
+                MicroBenchmark.Result result = MicroBenchmark.run("createBucketedData " + interval + "min " + days + "d", () -> {
+                    iobCobCalculatorPlugin.setBgReadings(bgReadings);
+                    iobCobCalculatorPlugin.createBucketedData();
+                    return iobCobCalculatorPlugin.getBucketedData();
+                });
+                Assert.assertTrue(result.opsPerSecond > 0);
+            }
+        }
+    }
+
+    @Test
+    public void glucoseStatus() {
+        IobCobCalculatorPlugin iobCobCalculatorPlugin = IobCobCalculatorPlugin.getPlugin();
+        for (int interval : new int[]{5, 1}) {
+            iobCobCalculatorPlugin.setBgReadings(new SyntheticData(now, SyntheticData.SEED).bgReadings(1, interval));
+            MicroBenchmark.Result result = MicroBenchmark.run("GlucoseStatus " + interval + "min",
+                    () -> GlucoseStatus.getGlucoseStatusData(true));
+            Assert.assertTrue(result.opsPerSecond > 0);
+        }
+    }
+}
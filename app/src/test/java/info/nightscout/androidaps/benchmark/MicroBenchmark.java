@@ -0,0 +1,100 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Minimal JMH like harness usable from plain JVM unit tests.
+ * Runs warmup iterations, then measured iterations and logs throughput
+ * and allocated bytes per operation (when JVM supports per thread allocation counters).
+ * <p>
+ * Benchmarks are skipped during normal test run, enable them by
+ * ./gradlew testFullDebugUnitTest -Pbenchmark --tests "info.nightscout.androidaps.benchmark.*"
+ */
+public class MicroBenchmark {
+    private static Logger log = LoggerFactory.getLogger(MicroBenchmark.class);
+
+    public static final String ENABLED_PROPERTY = "aaps.benchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 200_000_000L; // 200 ms
+
+    // consumed results so JIT can't eliminate benchmarked code
+    private static volatile Object blackhole;
+
+    public interface Operation {
+        Object run();
+    }
+
+    public static class Result {
+        public final String name;
+        public final double opsPerSecond;
+        public final double bytesPerOp; // -1 if not supported
+
+        Result(String name, double opsPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-60s %12.1f ops/s %14.1f B/op", name, opsPerSecond, bytesPerOp);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "false"));
+    }
+
+    public static Result run(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            iteration(operation);
+
+        long ops = 0;
+        long nanos = 0;
+        long allocated = 0;
+        boolean allocationSupported = true;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long count = iteration(operation);
+            nanos += System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            ops += count;
+            if (allocatedBefore < 0 || allocatedAfter < 0)
+                allocationSupported = false;
+            else
+                allocated += allocatedAfter - allocatedBefore;
+        }
+
+        Result result = new Result(name, ops * 1e9 / nanos, allocationSupported ? (double) allocated / ops : -1);
+        log.info(result.toString());
+        return result;
+    }
+
+    private static long iteration(Operation operation) {
+        long count = 0;
+        long end = System.nanoTime() + ITERATION_NANOS;
+        do {
+            blackhole = operation.run();
+            count++;
+        } while (System.nanoTime() < end);
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
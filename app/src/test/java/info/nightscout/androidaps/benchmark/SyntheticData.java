@@ -0,0 +1,81 @@
+package info.nightscout.androidaps.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.plugins.treatments.Treatment;
+import info.nightscout.androidaps.utils.T;
+
+/**
+ * Reproducible synthetic history for benchmarks. Same seed produces the same data.
+ * All lists are sorted newest first the same way as returned from database.
+ */
+public class SyntheticData {
+
+    // fixed seed so results of different runs and history lengths are comparable
+    public static final long SEED = 20191001L;
+
+    private final long now;
+    private final Random random;
+
+    public SyntheticData(long now, long seed) {
+        this.now = now;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * BG following a slow sine wave with noise
+     *
+     * @param days            history length
+     * @param intervalMinutes 5 for Dexcom like data, 1 for Libre like data
+     */
+    public List<BgReading> bgReadings(int days, int intervalMinutes) {
+        List<BgReading> list = new ArrayList<>();
+        long interval = T.mins(intervalMinutes).msecs();
+        long from = now - T.days(days).msecs();
+        for (long time = now; time > from; time -= interval) {
+            double value = 120 + 50 * Math.sin(time / (double) T.hours(3).msecs()) + random.nextGaussian() * 3;
+            list.add(new BgReading().date(time).value(Math.round(value)));
+        }
+        return list;
+    }
+
+    /**
+     * SMB every 5 min plus meal bolus with carbs every 6 hours
+     */
+    public List<Treatment> treatments(int days) {
+        List<Treatment> list = new ArrayList<>();
+        long from = now - T.days(days).msecs();
+        for (long time = now; time > from; time -= T.mins(5).msecs()) {
+            Treatment smb = new Treatment();
+            smb.date = time;
+            smb.insulin = 0.1 + random.nextInt(5) * 0.1;
+            smb.isSMB = true;
+            smb.mealBolus = false;
+            list.add(smb);
+            if ((time / T.mins(5).msecs()) % 72 == 0) {
+                Treatment meal = new Treatment();
+                meal.date = time - 1000;
+                meal.insulin = 3 + random.nextInt(4);
+                meal.carbs = 30 + random.nextInt(40);
+                list.add(meal);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 30 min temp basals continuously set by loop
+     */
+    public List<TemporaryBasal> tempBasals(int days) {
+        List<TemporaryBasal> list = new ArrayList<>();
+        long from = now - T.days(days).msecs();
+        for (long time = now - T.mins(30).msecs(); time > from; time -= T.mins(30).msecs()) {
+            list.add(new TemporaryBasal().date(time).duration(30).absolute(random.nextInt(30) * 0.1));
+        }
+        return list;
+    }
+}
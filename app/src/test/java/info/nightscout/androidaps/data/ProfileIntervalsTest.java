@@ -85,6 +85,22 @@ public class ProfileIntervalsTest {
 
     }
 
+    @Test
+    public void testBoundaries() {
+        list.reset();
+        Assert.assertEquals(0, list.getBoundaries().length);
+        list.add(new ProfileSwitch().date(startDate).profileName("1").profile(AAPSMocker.getValidProfile()));
+        list.add(new ProfileSwitch().date(startDate + T.hours(6).msecs()).duration((int) T.hours(1).mins()).profileName("3").profile(AAPSMocker.getValidProfile()));
+        long[] boundaries = list.getBoundaries();
+        Assert.assertArrayEquals(new long[]{startDate, startDate + T.hours(6).msecs(), startDate + T.hours(7).msecs()}, boundaries);
+        // same instance until changed
+        Assert.assertSame(boundaries, list.getBoundaries());
+        // overlapping interval is cut by newer one
+        list.add(new ProfileSwitch().date(startDate + T.hours(5).msecs()).duration((int) T.hours(2).mins()).profileName("2").profile(AAPSMocker.getValidProfile()));
+        Assert.assertNotSame(boundaries, list.getBoundaries());
+        Assert.assertArrayEquals(new long[]{startDate, startDate + T.hours(5).msecs(), startDate + T.hours(6).msecs(), startDate + T.hours(7).msecs()}, list.getBoundaries());
+    }
+
     @Before
     public void prepareMock() {
         AAPSMocker.mockMainApp();
@@ -9,6 +9,7 @@ import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import java.util.Calendar;
@@ -139,6 +140,57 @@ public class ProfileTest {
         //Assert.assertEquals(true, ((AAPSMocker.MockedBus) MainApp.bus()).notificationSent);
     }
 
+    @Test
+    public void scheduleLookupTest() throws Exception {
+        String profile = "{\"dia\":\"3\",\"carbratio\":[{\"time\":\"00:00\",\"value\":\"30\"}],\"sens\":[{\"time\":\"00:00\",\"value\":\"100\"}],\"timezone\":\"UTC\",\"basal\":[{\"time\":\"00:00\",\"value\":\"1\"},{\"time\":\"00:10\",\"value\":\"2\"},{\"time\":\"00:20\",\"value\":\"3\"},{\"time\":\"12:45\",\"value\":\"4\"}],\"target_low\":[{\"time\":\"00:00\",\"value\":\"4\"}],\"target_high\":[{\"time\":\"00:00\",\"value\":\"5\"}],\"startDate\":\"1970-01-01T00:00:00.000Z\",\"units\":\"mmol\"}";
+
+        // several segments inside one 30 min slot and segment not aligned to slot
+        Profile p = new Profile(new JSONObject(profile), 100, 0);
+        Assert.assertEquals(1d, p.getBasalTimeFromMidnight(0), 0.01d);
+        Assert.assertEquals(1d, p.getBasalTimeFromMidnight(10 * 60 - 1), 0.01d);
+        Assert.assertEquals(2d, p.getBasalTimeFromMidnight(10 * 60), 0.01d);
+        Assert.assertEquals(3d, p.getBasalTimeFromMidnight(20 * 60), 0.01d);
+        Assert.assertEquals(3d, p.getBasalTimeFromMidnight(12 * 60 * 60 + 44 * 60), 0.01d);
+        Assert.assertEquals(4d, p.getBasalTimeFromMidnight(12 * 60 * 60 + 45 * 60), 0.01d);
+        Assert.assertEquals(4d, p.getBasalTimeFromMidnight(24 * 60 * 60 - 1), 0.01d);
+        // 25h day on DST change
+        Assert.assertEquals(4d, p.getBasalTimeFromMidnight(25 * 60 * 60 - 1), 0.01d);
+
+        // percentage and timeshift are applied before compiling
+        p = new Profile(new JSONObject(profile), 200, 1);
+        Assert.assertEquals(8d, p.getBasalTimeFromMidnight(0), 0.01d);
+        Assert.assertEquals(2d, p.getBasalTimeFromMidnight(60 * 60), 0.01d);
+        Assert.assertEquals(4d, p.getBasalTimeFromMidnight(60 * 60 + 10 * 60), 0.01d);
+        Assert.assertEquals(8d, p.getBasalTimeFromMidnight(13 * 60 * 60 + 45 * 60), 0.01d);
+        Assert.assertEquals(50d, p.getIsfTimeFromMidnight(0), 0.01d);
+    }
+
+    @Test
+    public void basalScheduleIsClampedByValidation() throws Exception {
+        String profile = "{\"dia\":\"3\",\"carbratio\":[{\"time\":\"00:00\",\"value\":\"30\"}],\"sens\":[{\"time\":\"00:00\",\"value\":\"100\"}],\"timezone\":\"UTC\",\"basal\":[{\"time\":\"00:00\",\"value\":\"2\"}],\"target_low\":[{\"time\":\"00:00\",\"value\":\"4\"}],\"target_high\":[{\"time\":\"00:00\",\"value\":\"5\"}],\"startDate\":\"1970-01-01T00:00:00.000Z\",\"units\":\"mmol\"}";
+        Profile p = new Profile(new JSONObject(profile), 100, 0);
+
+        // schedule compiled before validation
+        Assert.assertEquals(2d, p.getBasal(0), 0.01d);
+
+        pump.getPumpDescription().basalMaximumRate = 1d;
+        Assert.assertEquals(true, p.isValid("Test", false));
+        Assert.assertEquals(1d, p.getBasal(0), 0.01d);
+        Assert.assertEquals(1d, p.getBasalTimeFromMidnight(12 * 60 * 60), 0.01d);
+    }
+
+    @Test
+    public void basalScheduleIsKeptWhenNothingIsClamped() throws Exception {
+        String profile = "{\"dia\":\"3\",\"carbratio\":[{\"time\":\"00:00\",\"value\":\"30\"}],\"sens\":[{\"time\":\"00:00\",\"value\":\"100\"}],\"timezone\":\"UTC\",\"basal\":[{\"time\":\"00:00\",\"value\":\"2\"}],\"target_low\":[{\"time\":\"00:00\",\"value\":\"4\"}],\"target_high\":[{\"time\":\"00:00\",\"value\":\"5\"}],\"startDate\":\"1970-01-01T00:00:00.000Z\",\"units\":\"mmol\"}";
+        Profile p = new Profile(new JSONObject(profile), 100, 0);
+
+        Assert.assertEquals(2d, p.getBasal(0), 0.01d);
+        Object schedule = Whitebox.getInternalState(p, "basalSchedule");
+        Assert.assertEquals(true, p.isValid("Test", false));
+        Assert.assertEquals(true, p.isValid("Test", false));
+        Assert.assertSame(schedule, Whitebox.getInternalState(p, "basalSchedule"));
+    }
+
     @Before
     public void prepareMock() {
         AAPSMocker.mockMainApp();
@@ -0,0 +1,73 @@
+package info.nightscout.androidaps.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BgReadingBatchTest {
+
+    private BgReading reading(long date, double value) {
+        return new BgReading().date(date).value(value);
+    }
+
+    @Test
+    public void inOrderReadingsAreNotHistoryChange() {
+        BgReading first = reading(2000, 100);
+        BgReading second = reading(3000, 110);
+        BgReadingBatch batch = new BgReadingBatch(Arrays.asList(second, first));
+        assertEquals(2000, batch.from());
+        assertEquals(3000, batch.to());
+
+        batch.merge(new ArrayList<>(), 1000);
+
+        assertEquals(Arrays.asList(first, second), batch.toCreate);
+        assertSame(second, batch.newest);
+        assertFalse(batch.isHistoryChange());
+    }
+
+    @Test
+    public void backfilledReadingIsHistoryChange() {
+        BgReading backfilled = reading(2000, 100);
+        BgReading current = reading(4000, 110);
+        BgReadingBatch batch = new BgReadingBatch(Arrays.asList(backfilled, current));
+
+        batch.merge(new ArrayList<>(), 3000);
+
+        assertSame(current, batch.newest);
+        assertTrue(batch.isHistoryChange());
+        assertEquals(2000, batch.historyChangeFrom);
+    }
+
+    @Test
+    public void unchangedReadingsAreIgnored() {
+        BgReadingBatch batch = new BgReadingBatch(Collections.singletonList(reading(2000, 100)));
+
+        batch.merge(Collections.singletonList(reading(2000, 100)), 2000);
+
+        assertTrue(batch.toCreate.isEmpty());
+        assertTrue(batch.toUpdate.isEmpty());
+        assertNull(batch.newest);
+        assertFalse(batch.isHistoryChange());
+    }
+
+    @Test
+    public void changedReadingIsUpdated() {
+        BgReading stored = reading(2000, 100);
+        BgReadingBatch batch = new BgReadingBatch(Arrays.asList(reading(2000, 120), reading(2000, 130)));
+
+        batch.merge(Collections.singletonList(stored), 3000);
+
+        assertEquals(Collections.singletonList(stored), batch.toUpdate);
+        assertEquals(130, stored.value, 0.01d); // last duplicate wins
+        assertTrue(batch.toCreate.isEmpty());
+        assertEquals(2000, batch.historyChangeFrom);
+    }
+}
@@ -0,0 +1,44 @@
+package info.nightscout.androidaps.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.junit.Test;
+
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DatabaseHelperUpgradeTest {
+
+    private static final String ADD_TIME_OFFSET = "ALTER TABLE `InsightHistoryOffsets` ADD COLUMN `timeOffset` BIGINT";
+
+    // upgrade doesn't use any state created in constructor
+    private final DatabaseHelper databaseHelper = mock(DatabaseHelper.class, CALLS_REAL_METHODS);
+
+
+    @Test
+    public void timeOffsetIsAddedToExistingInsightHistoryOffsets() {
+        // table exists since version 10
+        for (int oldVersion = 10; oldVersion < 14; oldVersion++) {
+            SQLiteDatabase database = mock(SQLiteDatabase.class);
+
+            databaseHelper.onUpgrade(database, mock(ConnectionSource.class), oldVersion, 14);
+
+            verify(database, times(1)).execSQL(ADD_TIME_OFFSET);
+        }
+    }
+
+
+    @Test
+    public void currentVersionIsNotAltered() {
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+
+        databaseHelper.onUpgrade(database, mock(ConnectionSource.class), 14, 14);
+
+        verify(database, never()).execSQL(ADD_TIME_OFFSET);
+    }
+}
@@ -0,0 +1,54 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.dao.Dao;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DbRequestDeleteTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void acksAreDeletedInChunksBelowSQLiteParameterLimit() throws Exception {
+        DatabaseHelper databaseHelper = mock(DatabaseHelper.class, CALLS_REAL_METHODS);
+        Dao<DbRequest, String> dao = mock(Dao.class);
+        doReturn(dao).when(databaseHelper).getDao(DbRequest.class);
+        when(dao.deleteIds(anyCollection())).thenAnswer(invocation -> ((Collection<String>) invocation.getArgument(0)).size());
+
+        List<String> nsClientIds = new ArrayList<>();
+        for (int i = 0; i < 1201; i++)
+            nsClientIds.add("id" + i);
+
+        assertEquals(1201, databaseHelper.deleteDbRequests(nsClientIds));
+
+        ArgumentCaptor<Collection<String>> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(dao, times(3)).deleteIds(chunks.capture());
+        assertEquals(500, chunks.getAllValues().get(0).size());
+        assertEquals(500, chunks.getAllValues().get(1).size());
+        assertEquals(201, chunks.getAllValues().get(2).size());
+        assertEquals("id1000", chunks.getAllValues().get(2).iterator().next());
+    }
+
+    @Test
+    public void emptyListDeletesNothing() throws Exception {
+        DatabaseHelper databaseHelper = mock(DatabaseHelper.class, CALLS_REAL_METHODS);
+        Dao<DbRequest, String> dao = mock(Dao.class);
+        doReturn(dao).when(databaseHelper).getDao(DbRequest.class);
+
+        assertEquals(0, databaseHelper.deleteDbRequests(new ArrayList<>()));
+        verify(dao, times(0)).deleteIds(anyCollection());
+    }
+}
@@ -0,0 +1,26 @@
+package info.nightscout.androidaps.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryTimingsTest {
+
+    @Test
+    public void emptyReport() {
+        assertEquals("Query timings:", new QueryTimings().report());
+    }
+
+    @Test
+    public void queriesAreReportedByName() {
+        QueryTimings queryTimings = new QueryTimings();
+        queryTimings.record("getTemporaryBasalsDataFromTime", 4000000, 20);
+        queryTimings.record("getBgreadingsDataFromTime", 2000000, 10);
+        queryTimings.record("getBgreadingsDataFromTime", 4000000, 21);
+
+        assertEquals("Query timings:" +
+                        "\ngetBgreadingsDataFromTime count: 2 avg: 3.0ms max: 4.0ms avg rows: 15" +
+                        "\ngetTemporaryBasalsDataFromTime count: 1 avg: 4.0ms max: 4.0ms avg rows: 20",
+                queryTimings.report());
+    }
+}
@@ -0,0 +1,91 @@
+package info.nightscout.androidaps.plugins.bus
+
+import info.nightscout.androidaps.events.Event
+import io.reactivex.functions.BiFunction
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RxBusTest {
+
+    open class EventParent(val value: Int) : Event()
+    class EventChild(value: Int) : EventParent(value)
+    class EventOther : Event()
+    class EventBurst(val value: Int) : Event()
+    class EventMerged(val value: Int) : Event()
+    class EventSteady(val value: Int) : Event()
+
+    @Test
+    fun eventIsDeliveredToItsClassAndSuperclasses() {
+        val parents = RxBus.toObservable(EventParent::class.java).test()
+        val children = RxBus.toObservable(EventChild::class.java).test()
+        val others = RxBus.toObservable(EventOther::class.java).test()
+        Thread.sleep(50) // subscription is made on io scheduler
+
+        RxBus.send(EventParent(1))
+        RxBus.send(EventChild(2))
+
+        parents.awaitCount(2)
+        children.awaitCount(1)
+        assertEquals(listOf(1, 2), parents.values().map { it.value })
+        assertEquals(listOf(2), children.values().map { it.value })
+        others.assertNoValues()
+
+        parents.dispose()
+        children.dispose()
+        others.dispose()
+    }
+
+    @Test
+    fun burstIsDeliveredAsOneList() {
+        val bursts = RxBus.toBurstObservable(EventBurst::class.java, 200, 2000, TimeUnit.MILLISECONDS).test()
+        Thread.sleep(50) // subscription is made on io scheduler
+
+        RxBus.send(EventBurst(1))
+        RxBus.send(EventBurst(2))
+        RxBus.send(EventBurst(3))
+        bursts.awaitCount(1)
+        Thread.sleep(500)
+        RxBus.send(EventBurst(4))
+        bursts.awaitCount(2)
+
+        assertEquals(listOf(listOf(1, 2, 3), listOf(4)), bursts.values().map { burst -> burst.map { it.value } })
+        bursts.dispose()
+    }
+
+    @Test
+    fun burstIsMerged() {
+        val merged = RxBus.toObservable(EventMerged::class.java, 200, 2000, TimeUnit.MILLISECONDS,
+                BiFunction<EventMerged, EventMerged, EventMerged> { e1, e2 -> if (e1.value <= e2.value) e1 else e2 }).test()
+        Thread.sleep(50) // subscription is made on io scheduler
+
+        RxBus.send(EventMerged(5))
+        RxBus.send(EventMerged(2))
+        RxBus.send(EventMerged(7))
+        merged.awaitCount(1)
+        Thread.sleep(500)
+
+        assertEquals(listOf(2), merged.values().map { it.value })
+        merged.dispose()
+    }
+
+    @Test
+    fun steadyStreamIsFlushedAfterMaxLatency() {
+        val bursts = RxBus.toBurstObservable(EventSteady::class.java, 200, 500, TimeUnit.MILLISECONDS).test()
+        Thread.sleep(50) // subscription is made on io scheduler
+
+        // gaps are shorter than window, so stream never goes quiet
+        for (i in 1..30) {
+            RxBus.send(EventSteady(i))
+            Thread.sleep(50)
+        }
+        val flushedWhileStreaming = bursts.valueCount()
+        Thread.sleep(600) // rest is flushed after window
+
+        assertTrue(flushedWhileStreaming >= 2)
+        // nothing is lost or reordered between lists
+        assertEquals((1..30).toList(), bursts.values().flatten().map { it.value })
+        bursts.dispose()
+    }
+}
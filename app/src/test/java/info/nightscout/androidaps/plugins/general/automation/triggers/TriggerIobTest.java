@@ -35,7 +35,7 @@ public class TriggerIobTest {
 
     @Test
     public void shouldRunTest() {
-        PowerMockito.when(iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(anyLong(), any(Profile.class))).thenReturn(generateIobRecordData());
+        PowerMockito.when(iobCobCalculatorPlugin.calculateFromTreatmentsAndTemps(anyLong(), any(Profile.class))).thenReturn(generateIobRecordData());
 
         TriggerIob t = new TriggerIob().setValue(1.1d).comparator(Comparator.Compare.IS_EQUAL);
         Assert.assertFalse(t.shouldRun());
@@ -0,0 +1,129 @@
+package info.nightscout.androidaps.plugins.general.nsclient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.utils.DateUtil;
+import info.nightscout.androidaps.utils.SP;
+import info.nightscout.androidaps.utils.T;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, SP.class, DateUtil.class})
+public class UploadWindowTest {
+
+    private UploadWindow uploadWindow;
+    // actions of database and NS client in order of execution
+    private final List<String> actions = new ArrayList<>();
+    private final List<Runnable> handlerQueue = new ArrayList<>();
+
+    @Before
+    public void prepareMocks() {
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockSP();
+        DatabaseHelper databaseHelper = AAPSMocker.mockDatabaseHelper();
+        PowerMockito.mockStatic(DateUtil.class);
+
+        when(SP.getInt(anyInt(), anyInt())).thenReturn(2);
+        when(DateUtil.now()).thenReturn(0L);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(databaseHelper).runInTransaction(any());
+        doAnswer(invocation -> {
+            actions.add("delete " + invocation.getArgument(0));
+            return 0;
+        }).when(databaseHelper).deleteDbRequests(anyList());
+
+        uploadWindow = new UploadWindow();
+    }
+
+    @Test
+    public void windowIsFullUntilAcked() {
+        uploadWindow.sent("a");
+        assertFalse(uploadWindow.isFull());
+        uploadWindow.sent("b");
+        assertTrue(uploadWindow.isFull());
+
+        uploadWindow.addAcked("a");
+        assertFalse(uploadWindow.isFull());
+        assertEquals(1, uploadWindow.inFlight());
+    }
+
+    @Test
+    public void ackedRequestIsNotResentBeforeDeleted() {
+        uploadWindow.sent("a");
+        uploadWindow.updateAcked("dbUpdate", "b");
+        uploadWindow.addAcked("a");
+
+        // still in UploadQueue, window must not send it again
+        assertTrue(uploadWindow.isInFlight("a"));
+
+        uploadWindow.deleteAcked();
+        assertEquals(Arrays.asList("delete [a]"), actions);
+        assertFalse(uploadWindow.isInFlight("a"));
+        assertFalse(uploadWindow.isInFlight("dbUpdateb"));
+    }
+
+    @Test
+    public void refillDeletesAckedBeforeSendingOncePerBurst() {
+        uploadWindow.sent("a");
+        uploadWindow.sent("b");
+        uploadWindow.addAcked("a");
+        uploadWindow.scheduleRefill(handlerQueue::add, () -> actions.add("send"));
+        uploadWindow.addAcked("b");
+        uploadWindow.scheduleRefill(handlerQueue::add, () -> actions.add("send"));
+
+        assertEquals(1, handlerQueue.size());
+        handlerQueue.remove(0).run();
+        assertEquals(Arrays.asList("delete [a, b]", "send"), actions);
+    }
+
+    @Test
+    public void ackDuringRefillSchedulesNextRefill() {
+        uploadWindow.sent("a");
+        uploadWindow.sent("b");
+        uploadWindow.addAcked("a");
+        uploadWindow.scheduleRefill(handlerQueue::add, () -> {
+            actions.add("send");
+            // ack of request in flight arrives while window is being refilled
+            uploadWindow.addAcked("b");
+            uploadWindow.scheduleRefill(handlerQueue::add, () -> actions.add("send"));
+        });
+
+        handlerQueue.remove(0).run();
+        assertEquals(1, handlerQueue.size());
+        handlerQueue.remove(0).run();
+        assertEquals(Arrays.asList("delete [a]", "send", "delete [b]", "send"), actions);
+    }
+
+    @Test
+    public void timedOutRequestIsSentAgain() {
+        uploadWindow.sent("a");
+        when(DateUtil.now()).thenReturn(T.mins(1).msecs() + 1);
+        uploadWindow.sent("b");
+
+        uploadWindow.expire();
+        assertFalse(uploadWindow.isInFlight("a"));
+        assertTrue(uploadWindow.isInFlight("b"));
+    }
+}
@@ -0,0 +1,127 @@
+package info.nightscout.androidaps.plugins.general.overview.graphData;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.db.TempTarget;
+import info.nightscout.androidaps.utils.MidnightTime;
+import info.nightscout.androidaps.utils.T;
+
+public class TimelineTest {
+
+    @Test
+    public void buildTest() {
+        long from = 100000L;
+        long to = from + T.hours(1).msecs();
+        Timeline timeline = new Timeline(from, to);
+        timeline.add(from + 5000);
+        timeline.add(from + 1000);
+        timeline.add(from + 5000);
+        timeline.add(from - 1); // before range
+        timeline.add(to); // end is excluded
+        timeline.add(new long[]{0, from + 1000, from + 3000, to, to + 1});
+        Assert.assertArrayEquals(new long[]{from, from + 1000, from + 3000, from + 5000}, timeline.build());
+    }
+
+    @Test
+    public void growTest() {
+        Timeline timeline = new Timeline(0, 1000);
+        for (long time = 999; time >= 0; time--)
+            timeline.add(time);
+        long[] times = timeline.build();
+        Assert.assertEquals(1000, times.length);
+        for (int i = 0; i < times.length; i++)
+            Assert.assertEquals(i, times[i]);
+    }
+
+    @Test
+    public void addIntervalsTest() {
+        long from = 100000L;
+        long to = from + T.hours(1).msecs();
+        Timeline timeline = new Timeline(from, to);
+        timeline.addIntervals(Arrays.asList(
+                new TempTarget().date(from - T.mins(30).msecs()).duration(20), // ends before range
+                new TempTarget().date(from - T.mins(10).msecs()).duration(20), // started before range, ends inside
+                new TempTarget().date(from + T.mins(20).msecs()).duration(5), // inside range
+                new TempTarget().date(from + T.mins(50).msecs()).duration(30), // ends after range
+                new TempTarget().date(to).duration(10) // starts at excluded end
+        ));
+        Assert.assertArrayEquals(new long[]{
+                from,
+                from + T.mins(10).msecs(),
+                from + T.mins(20).msecs(),
+                from + T.mins(25).msecs(),
+                from + T.mins(50).msecs()
+        }, timeline.build());
+    }
+
+    @Test
+    public void addScheduleAcrossDaysTest() {
+        withTimeZone("Europe/Prague", () -> {
+            long midnight = 1569880800000L; // 1.10.2019 00:00 +02
+            long from = midnight - T.hours(4).msecs();
+            long to = midnight + T.hours(6).msecs();
+            Timeline timeline = new Timeline(from, to);
+            timeline.addSchedule(schedule(0, 4 * 3600, 22 * 3600));
+            Assert.assertArrayEquals(new long[]{
+                    from,
+                    midnight - T.hours(2).msecs(),
+                    midnight,
+                    midnight + T.hours(4).msecs()
+            }, timeline.build());
+        });
+    }
+
+    @Test
+    public void addScheduleOverDSTTest() {
+        withTimeZone("Europe/Prague", () -> {
+            // 27.10.2019 has 25 hours
+            long midnight = 1572127200000L; // 27.10.2019 00:00 +02
+            long nextMidnight = 1572217200000L; // 28.10.2019 00:00 +01
+            Timeline timeline = new Timeline(midnight, nextMidnight + T.hours(1).msecs());
+            timeline.addSchedule(schedule(0, 4 * 3600));
+            long[] times = timeline.build();
+            Assert.assertArrayEquals(new long[]{midnight, midnight + T.hours(4).msecs(), nextMidnight}, times);
+            // points match offsets used by profile lookups
+            Assert.assertEquals(4 * 3600, Profile.secondsFromMidnight(times[1]));
+            Assert.assertEquals(0, Profile.secondsFromMidnight(times[2]));
+
+            // 31.3.2019 has 23 hours
+            midnight = 1553986800000L; // 31.3.2019 00:00 +01
+            nextMidnight = 1554069600000L; // 1.4.2019 00:00 +02
+            timeline = new Timeline(midnight, nextMidnight + T.hours(13).msecs());
+            timeline.addSchedule(schedule(0, 12 * 3600));
+            Assert.assertArrayEquals(new long[]{
+                    midnight,
+                    midnight + T.hours(12).msecs(),
+                    nextMidnight,
+                    nextMidnight + T.hours(12).msecs()
+            }, timeline.build());
+        });
+    }
+
+    private Profile.ProfileValue[] schedule(int... seconds) {
+        Profile profile = new Profile() {
+        };
+        Profile.ProfileValue[] values = new Profile.ProfileValue[seconds.length];
+        for (int i = 0; i < seconds.length; i++)
+            values[i] = profile.new ProfileValue(seconds[i], 1d);
+        return values;
+    }
+
+    private void withTimeZone(String id, Runnable test) {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone(id));
+            MidnightTime.resetCache();
+            test.run();
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            MidnightTime.resetCache();
+        }
+    }
+}
@@ -76,6 +76,29 @@ public class InsulinOrefBasePluginTest extends InsulinOrefBasePlugin {
         assertEquals(0d, this.iobCalcForTreatment(treatment, time).iobContrib, 0.1);
     }
 
+    @Test
+    public void testIobCalcForTreatmentMatchesExactCurve() {
+        this.peak = 75;
+        this.dia = 6;
+        double td = this.dia * 60;
+        long time = System.currentTimeMillis();
+
+        Treatment treatment = new Treatment();
+        treatment.insulin = 1d;
+        // whole minutes and values in between
+        for (long offset = 0; offset < td * 60 * 1000; offset += 37 * 1000) {
+            treatment.date = time - offset;
+            double t = offset / 1000d / 60d;
+            Iob iob = this.iobCalcForTreatment(treatment, time);
+            assertEquals(InsulinCurve.iobFraction(t, peak, td), iob.iobContrib, 0.0001);
+            assertEquals(InsulinCurve.activityFraction(t, peak, td), iob.activityContrib, 0.00001);
+        }
+
+        // curve must follow peak change
+        this.peak = 55;
+        treatment.date = time - 60 * 60 * 1000;
+        assertEquals(InsulinCurve.iobFraction(60, 55, td), this.iobCalcForTreatment(treatment, time).iobContrib, 0.0001);
+    }
 
     /**
      * this method is implemented to allow tests of the iobCalcForTreatment calculation
@@ -0,0 +1,43 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculatorPlugin;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.BgTimeline;
+import info.nightscout.androidaps.utils.T;
+
+public class BgTimelineTest {
+
+    @Test
+    public void doTests() {
+        Assert.assertEquals(0, new BgTimeline(null).size());
+        Assert.assertNull(new BgTimeline(null).readings());
+
+        List<BgReading> bgReadingList = new ArrayList<>();
+        bgReadingList.add(new BgReading().date(T.mins(20).msecs()).value(100));
+        bgReadingList.add(new BgReading().date(T.mins(15).msecs()).value(110));
+        bgReadingList.add(new BgReading().date(T.mins(10).msecs()).value(120));
+        bgReadingList.add(new BgReading().date(T.mins(5).msecs()).value(130));
+        BgTimeline timeline = new BgTimeline(bgReadingList);
+
+        Assert.assertEquals(4, timeline.size());
+        Assert.assertSame(bgReadingList, timeline.readings());
+        Assert.assertSame(bgReadingList.get(1), timeline.reading(1));
+        Assert.assertEquals(T.mins(15).msecs(), timeline.date(1));
+        Assert.assertEquals(110d, timeline.value(1), 0.01d);
+
+        Assert.assertEquals(0, timeline.indexAtOrBefore(T.mins(22).msecs()));
+        Assert.assertEquals(2, timeline.indexAtOrBefore(T.mins(10).msecs()));
+        Assert.assertEquals(3, timeline.indexAtOrBefore(T.mins(8).msecs()));
+        Assert.assertEquals(4, timeline.indexAtOrBefore(T.mins(4).msecs()));
+
+        Assert.assertEquals(-1, timeline.indexAtOrAfter(T.mins(22).msecs()));
+        Assert.assertEquals(2, timeline.indexAtOrAfter(T.mins(10).msecs()));
+        Assert.assertEquals(2, timeline.indexAtOrAfter(T.mins(8).msecs()));
+        Assert.assertEquals(3, timeline.indexAtOrAfter(T.mins(4).msecs()));
+    }
+}
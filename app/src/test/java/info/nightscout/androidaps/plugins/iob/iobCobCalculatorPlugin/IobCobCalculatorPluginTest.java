@@ -17,6 +17,7 @@ import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.db.BgReading;
 import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.plugins.configBuilder.ConfigBuilderPlugin;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensData;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin;
 import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.SP;
@@ -449,6 +450,37 @@ public class IobCobCalculatorPluginTest {
         Assert.assertEquals((Long) T.mins(20).msecs(), iobCobCalculatorPlugin.findPreviousTimeFromBucketedData(T.mins(25).msecs()));
     }
 
+    @Test
+    public void findResumeIndexTest() {
+        List<BgReading> bucketedData = new ArrayList<>();
+        bucketedData.add(new BgReading().date(T.mins(30).msecs()).value(100));
+        bucketedData.add(new BgReading().date(T.mins(25).msecs()).value(100));
+        bucketedData.add(new BgReading().date(T.mins(20).msecs()).value(100));
+        bucketedData.add(new BgReading().date(T.mins(15).msecs()).value(100));
+        bucketedData.add(new BgReading().date(T.mins(10).msecs()).value(100));
+        bucketedData.add(new BgReading().date(T.mins(5).msecs()).value(100));
+
+        // nothing calculated yet -> full pass
+        iobCobCalculatorPlugin.clearCache();
+        Assert.assertEquals(3, iobCobCalculatorPlugin.findResumeIndex(bucketedData));
+
+        // continue after newest calculated record
+        AutosensData autosensData = new AutosensData();
+        autosensData.time = T.mins(15).msecs();
+        iobCobCalculatorPlugin.getAutosensDataTable().put(T.mins(15).msecs(), autosensData);
+        Assert.assertEquals(3, iobCobCalculatorPlugin.findResumeIndex(bucketedData));
+        autosensData = new AutosensData();
+        autosensData.time = T.mins(20).msecs();
+        iobCobCalculatorPlugin.getAutosensDataTable().put(T.mins(20).msecs(), autosensData);
+        Assert.assertEquals(2, iobCobCalculatorPlugin.findResumeIndex(bucketedData));
+        autosensData = new AutosensData();
+        autosensData.time = T.mins(30).msecs();
+        iobCobCalculatorPlugin.getAutosensDataTable().put(T.mins(30).msecs(), autosensData);
+        Assert.assertEquals(0, iobCobCalculatorPlugin.findResumeIndex(bucketedData));
+
+        iobCobCalculatorPlugin.clearCache();
+    }
+
     @Before
     public void doMock() {
         AAPSMocker.mockMainApp();
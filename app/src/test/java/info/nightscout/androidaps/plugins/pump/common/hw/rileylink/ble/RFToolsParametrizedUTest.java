@@ -13,6 +13,7 @@ import android.util.Log;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGeoff;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGo;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bLoop;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bTable;
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 
 /**
@@ -331,6 +332,26 @@ public class RFToolsParametrizedUTest {
     }
 
 
+    @Test
+    public void tableDecode() throws Exception {
+        Encoding4b6bTable decoder = new Encoding4b6bTable();
+
+        byte[] decodedX = decoder.decode4b6b(this.encoded);
+
+        Assert.assertArrayEquals(decoded, decodedX);
+    }
+
+
+    @Test
+    public void tableEncode() {
+        Encoding4b6bTable decoder = new Encoding4b6bTable();
+
+        byte[] encodedX = decoder.encode4b6b(this.decoded);
+
+        Assert.assertArrayEquals(encoded, encodedX);
+    }
+
+
     @Test
     public void goEncode() {
         Encoding4b6bGo decoder = new Encoding4b6bGo();
@@ -0,0 +1,175 @@
+package info.nightscout.androidaps.plugins.pump.insight;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DateTimeChangedEvent;
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.DefaultDateTimeSetEvent;
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.history.history_events.HistoryEvent;
+import info.nightscout.androidaps.plugins.pump.insight.utils.ByteBuf;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistoryOffsetTrackerTest {
+
+    // every clock change in tests moves pump time one minute forward
+    private static final long TIME_CHANGE = 60 * 1000L;
+
+    private final List<String> stored = new ArrayList<>();
+
+    private final HistoryOffsetTracker.Storage storage = new HistoryOffsetTracker.Storage() {
+        @Override
+        public long storeEvents(List<HistoryEvent> historyEvents, long position, long startTimeOffset) {
+            StringBuilder positions = new StringBuilder();
+            long timeOffset = startTimeOffset;
+            for (HistoryEvent historyEvent : historyEvents) {
+                positions.append(historyEvent.getEventPosition()).append(" ");
+                if (historyEvent instanceof DateTimeChangedEvent)
+                    timeOffset += getTimeChange((DateTimeChangedEvent) historyEvent);
+            }
+            stored.add("events " + positions + "at " + position + " offset " + startTimeOffset);
+            return timeOffset;
+        }
+
+        @Override
+        public void storePosition(long position, Long timeOffset) {
+            stored.add("position " + position + " offset " + timeOffset);
+        }
+
+        @Override
+        public long getTimeChange(DateTimeChangedEvent event) {
+            return TIME_CHANGE;
+        }
+    };
+
+
+    @Test
+    public void offsetIsCarriedAcrossChunks() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, 1000L);
+
+        tracker.processChunk(chunk(event(3), clockChange(2), event(1)));
+        tracker.processChunk(chunk(event(4), event(5)));
+        tracker.finish(70000);
+
+        assertEquals(Arrays.asList(
+                "events 1 2 3 at 3 offset 1000",
+                "events 4 5 at 5 offset " + (1000 + TIME_CHANGE),
+                "position 5 offset 70000"), stored);
+    }
+
+
+    @Test
+    public void unknownOffsetIsCalculatedBackFromCurrentOffset() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, null);
+
+        tracker.processChunk(chunk(event(1), clockChange(2)));
+        tracker.processChunk(chunk(event(3)));
+        assertEquals(0, stored.size());
+        tracker.finish(100000);
+
+        assertEquals(Arrays.asList(
+                "events 1 2 3 at 3 offset " + (100000 - TIME_CHANGE),
+                "position 3 offset 100000"), stored);
+    }
+
+
+    @Test
+    public void oneResetInsideChunk() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, 1000L);
+
+        tracker.processChunk(chunk(event(1), event(2), reset(3), event(4), clockChange(5)));
+        tracker.processChunk(chunk(event(6)));
+        tracker.finish(100000);
+
+        assertEquals(Arrays.asList(
+                "events 1 2 at 3 offset 1000",
+                "position 3 offset null",
+                "events 4 5 6 at 6 offset " + (100000 - TIME_CHANGE),
+                "position 6 offset 100000"), stored);
+    }
+
+
+    @Test
+    public void twoResetsInsideChunk() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, 1000L);
+
+        // event 3 between resets can't be dated
+        tracker.processChunk(chunk(event(1), reset(2), event(3), reset(4), event(5)));
+        tracker.finish(5000);
+
+        assertEquals(Arrays.asList(
+                "events 1 at 2 offset 1000",
+                "position 2 offset null",
+                "position 4 offset null",
+                "events 5 at 5 offset 5000",
+                "position 5 offset 5000"), stored);
+    }
+
+
+    @Test
+    public void resetAsLastEventOfChunk() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, 1000L);
+
+        tracker.processChunk(chunk(event(1), event(2), reset(3)));
+        tracker.processChunk(chunk(event(4)));
+        tracker.finish(2000);
+
+        assertEquals(Arrays.asList(
+                "events 1 2 at 3 offset 1000",
+                "position 3 offset null",
+                "events 4 at 4 offset 2000",
+                "position 4 offset 2000"), stored);
+    }
+
+
+    @Test
+    public void resetAsLastEventOfHistory() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 0, null);
+
+        // events before reset with unknown offset are dropped
+        tracker.processChunk(chunk(event(1), reset(2)));
+        tracker.finish(2000);
+
+        assertEquals(Arrays.asList(
+                "position 2 offset null",
+                "position 2 offset 2000"), stored);
+    }
+
+
+    @Test
+    public void emptyHistoryStoresCurrentOffset() throws Exception {
+        HistoryOffsetTracker tracker = new HistoryOffsetTracker(storage, 7, null);
+
+        tracker.finish(2000);
+
+        assertEquals(Arrays.asList("position 7 offset 2000"), stored);
+    }
+
+
+    private List<HistoryEvent> chunk(HistoryEvent... historyEvents) {
+        return new ArrayList<>(Arrays.asList(historyEvents));
+    }
+
+    private HistoryEvent event(long position) {
+        return withPosition(new HistoryEvent(), position);
+    }
+
+    private HistoryEvent clockChange(long position) {
+        return withPosition(new DateTimeChangedEvent(), position);
+    }
+
+    private HistoryEvent reset(long position) {
+        return withPosition(new DefaultDateTimeSetEvent(), position);
+    }
+
+    private HistoryEvent withPosition(HistoryEvent historyEvent, long position) {
+        ByteBuf byteBuf = new ByteBuf(12);
+        byteBuf.putBytes((byte) 0, 8);
+        byteBuf.putUInt32LE(position);
+        historyEvent.parseHeader(byteBuf);
+        return historyEvent;
+    }
+}
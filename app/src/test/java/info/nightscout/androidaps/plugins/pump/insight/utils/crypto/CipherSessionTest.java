@@ -0,0 +1,65 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils.crypto;
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CipherSessionTest {
+
+    // expected values produced by former Cryptograph.encryptDataCTR and produceCCMTag
+    private static final byte[] KEY = Hex.decode("000102030405060708090a0b0c0d0e0f");
+    private static final byte[] NONCE = Hex.decode("a0a1a2a3a4a5a6a7a8a9aaabac");
+    private static final byte[] HEADER = Hex.decode("303132333435363738393a3b3c3d3e3f4041424344");
+
+    private void check(String payload, String ciphertext, String tag) {
+        CipherSession.KeyedCipher cipher = new CipherSession(KEY, KEY).getOutgoing();
+        byte[] plain = Hex.decode(payload);
+
+        byte[] produced = new byte[CipherSession.KeyedCipher.TAG_SIZE];
+        cipher.produceCCMTag(NONCE, plain, HEADER, produced, 0);
+        assertArrayEquals(Hex.decode(tag), produced);
+        assertTrue(cipher.verifyCCMTag(NONCE, plain, HEADER, Hex.decode(tag)));
+        produced[0] ^= 1;
+        assertFalse(cipher.verifyCCMTag(NONCE, plain, HEADER, produced));
+
+        byte[] data = plain.clone();
+        cipher.processCTR(NONCE, data, 0, data.length);
+        assertArrayEquals(Hex.decode(ciphertext), data);
+        cipher.processCTR(NONCE, data, 0, data.length);
+        assertArrayEquals(plain, data);
+    }
+
+    @Test
+    public void emptyPayload() {
+        check("", "", "65cbb2ea5c2733d2");
+    }
+
+    @Test
+    public void partialBlock() {
+        check("01080f161d", "dd0c6073e4", "3a2ba889f85a0183");
+    }
+
+    @Test
+    public void fullBlock() {
+        check("01080f161d242b323940474e555c636a", "dd0c6073e4f890497f87ed6a514341d2", "21600fde3a43cd02");
+    }
+
+    @Test
+    public void multipleBlocks() {
+        check("01080f161d242b323940474e555c636a71787f868d949ba2a9b0b7bec5ccd3dae1e8eff6fd",
+                "dd0c6073e4f890497f87ed6a514341d283393e18bc04fbd60248b1e90a50fba0fa9818e9ae",
+                "016b59950647efd9");
+    }
+
+    @Test
+    public void missingKeyHasNoCipher() {
+        CipherSession session = new CipherSession(null, KEY);
+        assertNull(session.getIncoming());
+        assertTrue(session.hasKeys(null, KEY.clone()));
+        assertFalse(session.hasKeys(KEY, KEY));
+    }
+}
@@ -40,7 +40,7 @@ public class MedtronicPumpHistoryDecoderUTest {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         decoder.decodeRecord(phe);
 
@@ -58,7 +58,7 @@ public class MedtronicPumpHistoryDecoderUTest {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         decoder.decodeRecord(phe);
 
@@ -143,7 +143,7 @@ public class MedtronicPumpHistoryDecoderUTest {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         System.out.println("EntryType: " + entryType);
 
@@ -0,0 +1,55 @@
+package info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
+
+/**
+ * Splitting of history page into records, decoding of single records is in MedtronicPumpHistoryDecoderUTest
+ */
+public class MedtronicPumpHistoryRecordsUTest {
+
+    private static final String REWIND_1 = "21 00 2A D8 0D 0A 13 ";
+    private static final String REWIND_2 = "21 00 2B D8 0D 0A 13 ";
+
+    private MedtronicPumpHistoryDecoder decoder = new MedtronicPumpHistoryDecoder();
+
+
+    @Test
+    public void recordEndingAtPageEndIsDecoded() {
+        byte[] page = ByteUtil.createByteArrayFromString(REWIND_1 + "00 00 " + REWIND_2 + "5D 70");
+
+        List<PumpHistoryEntry> entries = decoder.createRecords(page, page.length - 2); // without CRC
+
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(0, entries.get(0).getOffset());
+        Assert.assertEquals(9, entries.get(1).getOffset());
+        Assert.assertEquals(PumpHistoryEntryType.Rewind, entries.get(1).getEntryType());
+    }
+
+
+    @Test
+    public void truncatedFinalRecordIsDropped() {
+        byte[] page = ByteUtil.createByteArrayFromString(REWIND_1 + REWIND_2 + "21 00 2C");
+
+        List<PumpHistoryEntry> entries = decoder.createRecords(page, page.length);
+
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(7, entries.get(1).getOffset());
+    }
+
+
+    @Test
+    public void opCodeAsLastByteIsDropped() {
+        byte[] page = ByteUtil.createByteArrayFromString(REWIND_1 + "21 5D 70");
+        Assert.assertEquals(1, decoder.createRecords(page, page.length - 2).size());
+
+        // length of UnabsorbedInsulin is in the byte following the opCode
+        page = ByteUtil.createByteArrayFromString(REWIND_1 + "5C");
+        Assert.assertEquals(1, decoder.createRecords(page, page.length).size());
+    }
+
+}
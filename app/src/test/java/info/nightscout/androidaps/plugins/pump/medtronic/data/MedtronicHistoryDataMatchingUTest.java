@@ -0,0 +1,183 @@
+package info.nightscout.androidaps.plugins.pump.medtronic.data;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.plugins.pump.common.utils.DateTimeUtil;
+import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump.PumpHistoryEntry;
+import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump.PumpHistoryEntryType;
+import info.nightscout.androidaps.plugins.treatments.Treatment;
+import info.nightscout.androidaps.utils.SP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Matching of pump history records with treatments already in database.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, L.class, SP.class})
+public class MedtronicHistoryDataMatchingUTest {
+
+    private static final long PUMP_ATD = 20191001120000L;
+
+    private MedtronicHistoryData historyData;
+    private long pumpTime;
+
+
+    @Before
+    public void prepareMocks() {
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockSP();
+        AAPSMocker.mockL();
+        AAPSMocker.mockDatabaseHelper();
+
+        historyData = new MedtronicHistoryData();
+        pumpTime = DateTimeUtil.toMillisFromATD(PUMP_ATD);
+    }
+
+
+    @Test
+    public void entriesAreSortedAndSearchedByDate() {
+        MedtronicHistoryData.DbEntriesByDate entries = new MedtronicHistoryData.DbEntriesByDate(Arrays.asList(
+                treatment(3000, 0), treatment(2000, 0), treatment(1000, 0), treatment(2000, 0)));
+
+        assertEquals(4, entries.size());
+        assertEquals(1000, entries.entries.get(0).getDate());
+        assertEquals(3000, entries.entries.get(3).getDate());
+
+        assertEquals(0, entries.firstAfter(999));
+        assertEquals(1, entries.firstAfter(1000));
+        assertEquals(1, entries.firstAfter(1999));
+        assertEquals(3, entries.firstAfter(2000));
+        assertEquals(4, entries.firstAfter(3000));
+
+        assertEquals(1, entries.firstFrom(2000));
+        assertEquals(3, entries.firstFrom(2001));
+        assertEquals(3, entries.firstFrom(3000));
+        assertEquals(4, entries.firstFrom(3001));
+    }
+
+
+    @Test
+    public void noEntriesMatchNothing() {
+        assertNull(historyData.findDbEntry(bolus(PUMP_ATD), byDate()));
+    }
+
+
+    @Test
+    public void singleEntryIsMatchedUpToTwoMinutesAfterPumpRecord() {
+        Treatment inTime = treatment(pumpTime + 2 * 60 * 1000L, 0);
+        assertSame(inTime, historyData.findDbEntry(bolus(PUMP_ATD), byDate(inTime)));
+
+        Treatment tooLate = treatment(pumpTime + 2 * 60 * 1000L + 1, 0);
+        assertNull(historyData.findDbEntry(bolus(PUMP_ATD), byDate(tooLate)));
+    }
+
+
+    @Test
+    public void entryOnWindowBoundIsNotInWindow() {
+        // window (pumpTime - 10s, pumpTime + 10s) is open, entries are found only in 20s window
+        Treatment after = treatment(pumpTime + 10 * 1000L, 0);
+        Treatment farAfter = treatment(pumpTime + 60 * 1000L, 0);
+        assertSame(after, historyData.findDbEntry(bolus(PUMP_ATD), byDate(farAfter, after)));
+
+        Treatment before = treatment(pumpTime - 10 * 1000L, 0);
+        Treatment farBefore = treatment(pumpTime - 60 * 1000L, 0);
+        assertSame(before, historyData.findDbEntry(bolus(PUMP_ATD), byDate(before, farBefore)));
+    }
+
+
+    @Test
+    public void narrowestWindowWithSingleEntryIsUsed() {
+        Treatment near = treatment(pumpTime + 5 * 1000L, 0);
+        Treatment far = treatment(pumpTime + 15 * 1000L, 0);
+
+        assertSame(near, historyData.findDbEntry(bolus(PUMP_ATD), byDate(far, near)));
+    }
+
+
+    @Test
+    public void moreEntriesInEveryWindowMatchNothing() {
+        Treatment before = treatment(pumpTime - 5 * 1000L, 0);
+        Treatment after = treatment(pumpTime + 5 * 1000L, 0);
+
+        assertNull(historyData.findDbEntry(bolus(PUMP_ATD), byDate(before, after)));
+
+        Treatment sameTime1 = treatment(pumpTime + 30 * 1000L, 0);
+        Treatment sameTime2 = treatment(pumpTime + 30 * 1000L, 0);
+
+        assertNull(historyData.findDbEntry(bolus(PUMP_ATD), byDate(sameTime1, sameTime2)));
+    }
+
+
+    @Test
+    public void pumpEntryWithDuplicatePumpIdIsFilteredOutOnce() {
+        PumpHistoryEntry first = bolus(PUMP_ATD);
+        PumpHistoryEntry second = bolus(PUMP_ATD);
+        PumpHistoryEntry other = bolus(PUMP_ATD + 100);
+        List<PumpHistoryEntry> pumpEntries = new ArrayList<>(Arrays.asList(first, second, other));
+
+        Treatment added = treatment(pumpTime, first.getPumpId());
+        Treatment notFromPump = treatment(pumpTime, 0);
+        List<Treatment> treatments = new ArrayList<>(Arrays.asList(added, notFromPump));
+
+        historyData.filterOutAlreadyAddedEntries(pumpEntries, treatments);
+
+        assertEquals(2, pumpEntries.size());
+        assertSame(second, pumpEntries.get(0));
+        assertSame(other, pumpEntries.get(1));
+        assertEquals(1, treatments.size());
+        assertSame(notFromPump, treatments.get(0));
+    }
+
+
+    @Test
+    public void treatmentWithDuplicatePumpIdIsFilteredOutOnce() {
+        PumpHistoryEntry bolus = bolus(PUMP_ATD);
+        List<PumpHistoryEntry> pumpEntries = new ArrayList<>(Arrays.asList(bolus));
+
+        Treatment first = treatment(pumpTime, bolus.getPumpId());
+        Treatment second = treatment(pumpTime, bolus.getPumpId());
+        List<Treatment> treatments = new ArrayList<>(Arrays.asList(first, second));
+
+        historyData.filterOutAlreadyAddedEntries(pumpEntries, treatments);
+
+        assertEquals(0, pumpEntries.size());
+        assertEquals(1, treatments.size());
+        assertSame(second, treatments.get(0));
+    }
+
+
+    private MedtronicHistoryData.DbEntriesByDate byDate(Treatment... treatments) {
+        return new MedtronicHistoryData.DbEntriesByDate(Arrays.asList(treatments));
+    }
+
+
+    private Treatment treatment(long date, long pumpId) {
+        Treatment treatment = new Treatment();
+        treatment.date = date;
+        treatment.pumpId = pumpId;
+        return treatment;
+    }
+
+
+    private PumpHistoryEntry bolus(long atechDateTime) {
+        PumpHistoryEntry entry = new PumpHistoryEntry();
+        entry.setAtechDateTime(atechDateTime);
+        entry.setEntryType(PumpHistoryEntryType.Bolus);
+        return entry;
+    }
+
+}
@@ -0,0 +1,138 @@
+package info.nightscout.androidaps.plugins.treatments;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.benchmark.SyntheticData;
+import info.nightscout.androidaps.data.Iob;
+import info.nightscout.androidaps.data.IobTotal;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.interfaces.PumpInterface;
+import info.nightscout.androidaps.logging.L;
+import info.nightscout.androidaps.plugins.configBuilder.ConfigBuilderPlugin;
+import info.nightscout.androidaps.plugins.configBuilder.ProfileFunctions;
+import info.nightscout.androidaps.plugins.insulin.InsulinOrefRapidActingPlugin;
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult;
+import info.nightscout.androidaps.utils.SP;
+import info.nightscout.androidaps.utils.T;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * IOB arrays for predictions must match IOB calculated for every time separately
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, ConfigBuilderPlugin.class, ProfileFunctions.class, SP.class, L.class, TreatmentsPlugin.class, TreatmentService.class})
+public class IobArrayTest {
+
+    private final long now = System.currentTimeMillis();
+    private TreatmentsPlugin treatmentsPlugin;
+    private long[] times;
+    private List<Treatment> treatments;
+
+    @Before
+    public void prepareMocks() {
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockConfigBuilder();
+        AAPSMocker.mockSP();
+        AAPSMocker.mockProfileFunctions();
+        AAPSMocker.mockTreatmentService();
+        PowerMockito.mockStatic(L.class);
+        DatabaseHelper databaseHelper = AAPSMocker.mockDatabaseHelper();
+
+        when(ProfileFunctions.getInstance().getProfile(anyLong())).thenReturn(AAPSMocker.getValidProfile());
+        when(ConfigBuilderPlugin.getPlugin().getActiveInsulin()).thenReturn(InsulinOrefRapidActingPlugin.getPlugin());
+        when(ConfigBuilderPlugin.getPlugin().getActivePump()).thenReturn(mock(PumpInterface.class));
+
+        SyntheticData data = new SyntheticData(now, 1);
+        List<TemporaryBasal> tempBasals = data.tempBasals(1);
+        // running percent temp, is cut to now
+        tempBasals.add(0, new TemporaryBasal().date(now - T.mins(20).msecs()).duration(60).percent(150));
+        treatmentsPlugin = TreatmentsPlugin.getPlugin();
+        treatments = data.treatments(1);
+        when(treatmentsPlugin.getService().getTreatmentDataFromTime(anyLong(), anyBoolean())).thenReturn(new ArrayList<>(treatments));
+        when(databaseHelper.getTemporaryBasalsDataFromTime(anyLong(), anyBoolean())).thenReturn(tempBasals);
+        treatmentsPlugin.initializeData(T.days(1).msecs());
+
+        times = new long[48];
+        for (int i = 0; i < times.length; i++)
+            times[i] = now + T.mins(5).msecs() * i;
+    }
+
+    private void assertSame(IobTotal expected, IobTotal actual) {
+        Assert.assertEquals(expected.iob, actual.iob, 1e-9);
+        Assert.assertEquals(expected.activity, actual.activity, 1e-9);
+        Assert.assertEquals(expected.bolussnooze, actual.bolussnooze, 1e-9);
+        Assert.assertEquals(expected.basaliob, actual.basaliob, 1e-9);
+        Assert.assertEquals(expected.netbasalinsulin, actual.netbasalinsulin, 1e-9);
+        Assert.assertEquals(expected.hightempinsulin, actual.hightempinsulin, 1e-9);
+        Assert.assertEquals(expected.netInsulin, actual.netInsulin, 1e-9);
+        Assert.assertEquals(expected.lastBolusTime, actual.lastBolusTime);
+    }
+
+    // straightforward sum over all treatments, independent of TreatmentIndex and time window
+    private IobTotal referenceTreatments(long time) {
+        IobTotal total = new IobTotal(time);
+        double dia = ProfileFunctions.getInstance().getProfile().getDia();
+        double snoozeDiaDivisor = SP.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0);
+        for (Treatment t : treatments) {
+            if (!t.isValid || t.date > time) continue;
+            Iob tIOB = t.iobCalc(time, dia);
+            total.iob += tIOB.iobContrib;
+            total.activity += tIOB.activityContrib;
+            if (t.insulin > 0 && t.date > total.lastBolusTime)
+                total.lastBolusTime = t.date;
+            if (!t.isSMB) {
+                long snoozeTime = t.date + (long) ((time - t.date) * snoozeDiaDivisor);
+                total.bolussnooze += t.iobCalc(snoozeTime, dia).iobContrib;
+            }
+        }
+        return total;
+    }
+
+    @Test
+    public void treatmentsTest() {
+        IobTotal[] array = treatmentsPlugin.getCalculationToTimeTreatments(times);
+        for (int i = 0; i < times.length; i++) {
+            IobTotal expected = referenceTreatments(times[i]);
+            Assert.assertEquals(expected.iob, array[i].iob, 1e-9);
+            Assert.assertEquals(expected.activity, array[i].activity, 1e-9);
+            Assert.assertEquals(expected.bolussnooze, array[i].bolussnooze, 1e-9);
+            Assert.assertEquals(expected.lastBolusTime, array[i].lastBolusTime);
+            assertSame(treatmentsPlugin.getCalculationToTimeTreatments(times[i]), array[i]);
+        }
+        // reference must not be trivially zero
+        Assert.assertTrue(array[0].iob > 0);
+    }
+
+    @Test
+    public void tempBasalsTest() {
+        IobTotal[] array = treatmentsPlugin.getCalculationToTimeTempBasals(times, now, null, false, 0, false);
+        for (int i = 0; i < times.length; i++)
+            assertSame(treatmentsPlugin.getCalculationToTimeTempBasals(times[i], true, now), array[i]);
+    }
+
+    @Test
+    public void tempBasalsWithAutosensTest() {
+        AutosensResult autosensResult = new AutosensResult();
+        autosensResult.ratio = 0.8;
+        IobTotal[] array = treatmentsPlugin.getCalculationToTimeTempBasals(times, now, autosensResult, false, 0, false);
+        for (int i = 0; i < times.length; i++)
+            assertSame(treatmentsPlugin.getCalculationToTimeTempBasals(times[i], now, autosensResult, false, 0, false), array[i]);
+    }
+}
@@ -0,0 +1,50 @@
+package info.nightscout.androidaps.plugins.treatments;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.utils.T;
+
+public class TreatmentIndexTest {
+
+    private Treatment treatment(long date) {
+        Treatment treatment = new Treatment();
+        treatment.date = date;
+        return treatment;
+    }
+
+    @Test
+    public void doTests() {
+        List<Treatment> list = new ArrayList<>();
+        // unsorted input
+        list.add(treatment(T.mins(10).msecs()));
+        list.add(treatment(T.mins(20).msecs()));
+        list.add(treatment(T.mins(5).msecs()));
+        list.add(treatment(T.mins(15).msecs()));
+        TreatmentIndex index = new TreatmentIndex(list);
+
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(T.mins(20).msecs(), index.get(0).date);
+        Assert.assertEquals(T.mins(5).msecs(), index.get(3).date);
+
+        Assert.assertEquals(0, index.indexAtOrBefore(T.mins(25).msecs()));
+        Assert.assertEquals(0, index.indexAtOrBefore(T.mins(20).msecs()));
+        Assert.assertEquals(1, index.indexAtOrBefore(T.mins(20).msecs() - 1));
+        Assert.assertEquals(3, index.indexAtOrBefore(T.mins(5).msecs()));
+        Assert.assertEquals(4, index.indexAtOrBefore(T.mins(4).msecs()));
+
+        // from exclusive, to inclusive
+        List<Treatment> range = index.getRange(T.mins(5).msecs(), T.mins(15).msecs());
+        Assert.assertEquals(2, range.size());
+        Assert.assertEquals(T.mins(15).msecs(), range.get(0).date);
+        Assert.assertEquals(T.mins(10).msecs(), range.get(1).date);
+
+        Assert.assertEquals(4, index.getRange(0, T.mins(30).msecs()).size());
+        Assert.assertEquals(0, index.getRange(T.mins(21).msecs(), T.mins(30).msecs()).size());
+        Assert.assertEquals(0, index.getRange(T.mins(11).msecs(), T.mins(14).msecs()).size());
+        Assert.assertEquals(0, new TreatmentIndex().getRange(0, T.mins(30).msecs()).size());
+    }
+}
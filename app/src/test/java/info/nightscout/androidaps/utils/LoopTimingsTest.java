@@ -0,0 +1,94 @@
+package info.nightscout.androidaps.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DateUtil.class})
+public class LoopTimingsTest {
+
+    @Before
+    public void prepare() {
+        PowerMockito.mockStatic(DateUtil.class);
+        LoopTimings.reset();
+    }
+
+    @Test
+    public void markWithoutTraceIsIgnored() {
+        LoopTimings.mark(LoopTimings.Stage.APS);
+        LoopTimings.finish("no enact");
+        assertEquals("Loop timings [ms]\n\nLast loops\n", LoopTimings.report());
+    }
+
+    @Test
+    public void traceIsCollected() {
+        LoopTimings.start();
+        LoopTimings.mark(LoopTimings.Stage.CALCULATION_START);
+        LoopTimings.mark(LoopTimings.Stage.APS);
+        LoopTimings.finish("no enact");
+
+        String report = LoopTimings.report();
+        assertTrue(report.contains("calculation start count: 1"));
+        assertTrue(report.contains("determine basal count: 1"));
+        assertTrue(report.contains("total count: 1"));
+        assertTrue(report.contains("no enact"));
+        assertFalse(report.contains("pump tbr"));
+    }
+
+    @Test
+    public void runWithoutTraceDoesNotFinishRunningTrace() {
+        LoopTimings.start();
+        LoopTimings.Trace trace = LoopTimings.current();
+        LoopTimings.mark(trace, LoopTimings.Stage.LOOP);
+
+        // loop run triggered by other event than new BG
+        LoopTimings.mark(null, LoopTimings.Stage.APS);
+        LoopTimings.finish(null, "no enact");
+        String report = LoopTimings.report();
+        assertFalse(report.contains("determine basal"));
+        assertFalse(report.contains("total"));
+
+        LoopTimings.mark(trace, LoopTimings.Stage.APS);
+        LoopTimings.finish(trace, "tbr");
+        report = LoopTimings.report();
+        assertTrue(report.contains("loop start count: 1"));
+        assertTrue(report.contains("determine basal count: 1"));
+        assertTrue(report.contains("tbr"));
+        assertFalse(report.contains("no enact"));
+    }
+
+    @Test
+    public void finishedTraceIsNotMarkedAgain() {
+        LoopTimings.start();
+        LoopTimings.Trace old = LoopTimings.current();
+        LoopTimings.start();
+        LoopTimings.mark(old, LoopTimings.Stage.APS);
+        LoopTimings.finish(old, "tbr");
+
+        String report = LoopTimings.report();
+        assertFalse(report.contains("determine basal"));
+        assertFalse(report.contains("tbr"));
+        assertTrue(report.contains("total count: 1"));
+    }
+
+    @Test
+    public void unfinishedTraceIsSuperseded() {
+        LoopTimings.start();
+        LoopTimings.mark(LoopTimings.Stage.CALCULATION_START);
+        LoopTimings.start();
+        LoopTimings.finish("skipped");
+
+        String report = LoopTimings.report();
+        assertTrue(report.contains("total count: 2"));
+        assertTrue(report.contains("superseded"));
+        assertTrue(report.indexOf("skipped") < report.indexOf("superseded"));
+    }
+}
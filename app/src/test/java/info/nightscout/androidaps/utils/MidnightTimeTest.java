@@ -10,6 +10,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 
 import info.AAPSMocker;
 import info.nightscout.androidaps.MainApp;
@@ -53,12 +54,52 @@ public class MidnightTimeTest {
         Assert.assertEquals(midnight, MidnightTime.calc(now));
     }
 
+    @Test
+    public void calc_dst() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Prague"));
+            MidnightTime.resetCache();
+            // 23h day
+            long midnight = MidnightTime.calc(1554026400000L); // 31.3.2019 12:00 CEST
+            Assert.assertEquals(1553986800000L, midnight); // 31.3.2019 00:00 CET
+            Assert.assertEquals(1553986800000L, MidnightTime.calc(1554069599999L)); // 31.3.2019 23:59:59.999 CEST
+            Assert.assertEquals(1554069600000L, MidnightTime.calc(1554069600000L)); // 1.4.2019 00:00 CEST
+            // 25h day, range is extended forward
+            Assert.assertEquals(1572127200000L, MidnightTime.calc(1572127200000L + T.hours(24).msecs())); // 27.10.2019 23:00 CET
+            Assert.assertEquals(1572127200000L, MidnightTime.calc(1572217200000L - 1)); // 27.10.2019 23:59:59.999 CET
+            Assert.assertEquals(1572217200000L, MidnightTime.calc(1572217200000L)); // 28.10.2019 00:00 CET
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            MidnightTime.resetCache();
+        }
+    }
+
+    @Test
+    public void calc_dst_at_midnight() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            // DST starts at 00:00, 8.9.2019 begins at 01:00
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Santiago"));
+            MidnightTime.resetCache();
+            Assert.assertEquals(1567915200000L, MidnightTime.calc(1567954800000L)); // 8.9.2019 12:00 -> 8.9.2019 01:00 -03
+            Assert.assertEquals(1567998000000L, MidnightTime.calc(1567999800000L)); // 9.9.2019 00:30 -> 9.9.2019 00:00 -03
+            Assert.assertEquals(1568084400000L, MidnightTime.calc(1568086200000L)); // 10.9.2019 00:30 -> 10.9.2019 00:00 -03
+            // range extended backward over DST change
+            Assert.assertEquals(1567828800000L, MidnightTime.calc(1567828800000L + T.hours(12).msecs())); // 7.9.2019 12:00 -> 7.9.2019 00:00 -04
+            Assert.assertEquals(1567998000000L, MidnightTime.calc(1567999800000L));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+            MidnightTime.resetCache();
+        }
+    }
+
     @Test
     public void resetCache() {
         long now = DateUtil.now();
         MidnightTime.calc(now);
         MidnightTime.resetCache();
-        Assert.assertEquals(0, MidnightTime.times.size());
+        Assert.assertEquals(0, MidnightTime.midnights.length);
     }
     @Test
     public void log() {